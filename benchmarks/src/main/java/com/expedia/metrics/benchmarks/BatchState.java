@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataBuffer;
+import com.expedia.metrics.metrictank.MessagePackSerializer;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of distinct series and its serialized forms, for the list serialization paths.
+ */
+@State(Scope.Benchmark)
+public class BatchState {
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    public List<MetricData> metrics;
+    public MetricDataBuffer buffer;
+    public byte[] messagePackBytes;
+
+    @Setup
+    public void setUp(MetricState metricState) throws IOException {
+        metrics = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            metrics.add(metricState.createMetric(i));
+        }
+        buffer = new MetricDataBuffer(batchSize);
+        for (final MetricData metric : metrics) {
+            buffer.add(metric);
+        }
+        messagePackBytes = new MessagePackSerializer().serializeList(metrics);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.columnar.ColumnarBatch;
+import com.expedia.metrics.columnar.ColumnarSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ColumnarSerializerBenchmark {
+    private static final ColumnarSerializer SERIALIZER = new ColumnarSerializer();
+
+    /**
+     * The batch of a BatchState in the columnar format
+     */
+    @State(Scope.Benchmark)
+    public static class ColumnarState {
+        public byte[] bytes;
+
+        @Setup
+        public void setUp(BatchState batch) throws IOException {
+            bytes = SERIALIZER.serializeList(batch.metrics);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeList(BatchState batch) throws IOException {
+        return SERIALIZER.serializeList(batch.metrics);
+    }
+
+    @Benchmark
+    public List<MetricData> deserializeList(ColumnarState state) throws IOException {
+        return SERIALIZER.deserializeList(state.bytes);
+    }
+
+    @Benchmark
+    public ColumnarBatch deserializeBatch(ColumnarState state) throws IOException {
+        return SERIALIZER.deserializeBatch(state.bytes);
+    }
+}
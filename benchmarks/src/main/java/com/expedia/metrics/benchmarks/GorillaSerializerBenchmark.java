@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDefinition;
+import com.expedia.metrics.gorilla.GorillaSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GorillaSerializerBenchmark {
+    private static final GorillaSerializer SERIALIZER = new GorillaSerializer();
+    private static final int SERIES = 10;
+
+    /**
+     * Interleaved points of ten series at the interval of their definitions, with slowly changing values
+     */
+    @State(Scope.Benchmark)
+    public static class SeriesState {
+        @Param({"10", "1000"})
+        public int pointsPerSeries;
+
+        public List<MetricData> metrics;
+        public byte[] bytes;
+
+        @Setup
+        public void setUp(MetricState metricState) throws IOException {
+            final MetricDefinition[] definitions = new MetricDefinition[SERIES];
+            for (int s = 0; s < SERIES; s++) {
+                definitions[s] = metricState.createMetric(s).getMetricDefinition();
+            }
+            metrics = new ArrayList<>(SERIES * pointsPerSeries);
+            for (int i = 0; i < pointsPerSeries; i++) {
+                for (int s = 0; s < SERIES; s++) {
+                    metrics.add(new MetricData(definitions[s], i / 10 + s, 1533174720L + 15L * i));
+                }
+            }
+            bytes = SERIALIZER.serializeList(metrics);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeList(SeriesState state) throws IOException {
+        return SERIALIZER.serializeList(state.metrics);
+    }
+
+    @Benchmark
+    public List<MetricData> deserializeList(SeriesState state) throws IOException {
+        return SERIALIZER.deserializeList(state.bytes);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.DefaultIdFactory;
+import com.expedia.metrics.HashIdFactory;
+import com.expedia.metrics.metrictank.MetricKey;
+import com.expedia.metrics.metrictank.MetricTankIdFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class IdFactoryBenchmark {
+    private static final DefaultIdFactory DEFAULT_ID_FACTORY = new DefaultIdFactory();
+    private static final HashIdFactory HASH_ID_FACTORY = new HashIdFactory();
+    private static final MetricTankIdFactory METRIC_TANK_ID_FACTORY = new MetricTankIdFactory();
+
+    @Benchmark
+    public String defaultIdFactory(MetricState state) {
+        return DEFAULT_ID_FACTORY.getId(state.metric.getMetricDefinition());
+    }
+
+    @Benchmark
+    public String hashIdFactory(MetricState state) {
+        return HASH_ID_FACTORY.getId(state.metric.getMetricDefinition());
+    }
+
+    /**
+     * Formats the tags and computes the digest on every call, as getKey did for every definition before the key was
+     * memoized on MetricTankMetricDefinition
+     */
+    @Benchmark
+    public MetricKey metricTankIdFactoryGetKey(MetricState state) {
+        return METRIC_TANK_ID_FACTORY.getKey(state.plainDefinition);
+    }
+
+    /**
+     * Reads the key memoized on a MetricTankMetricDefinition
+     */
+    @Benchmark
+    public MetricKey metricTankIdFactoryGetKeyMemoized(MetricState state) {
+        return METRIC_TANK_ID_FACTORY.getKey(state.metric.getMetricDefinition());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.jackson.CBORSerializer;
+import com.expedia.metrics.jackson.JacksonSerializer;
+import com.expedia.metrics.jackson.SmileSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+public class JacksonSerializerBenchmark {
+
+    /**
+     * The serializer for a format, and a metric serialized in that format
+     */
+    @State(Scope.Benchmark)
+    public static class FormatState {
+        @Param({"json", "smile", "cbor"})
+        public String format;
+
+        public JacksonSerializer serializer;
+        public byte[] bytes;
+
+        @Setup
+        public void setUp(MetricState state) throws IOException {
+            if ("smile".equals(format)) {
+                serializer = new SmileSerializer();
+            } else if ("cbor".equals(format)) {
+                serializer = new CBORSerializer();
+            } else {
+                serializer = new JacksonSerializer();
+            }
+            bytes = serializer.serialize(state.metric);
+        }
+    }
+
+    /**
+     * A batch serialized in the format of the FormatState
+     */
+    @State(Scope.Benchmark)
+    public static class FormatBatchState {
+        public byte[] bytes;
+
+        @Setup
+        public void setUp(FormatState format, BatchState batch) throws IOException {
+            bytes = format.serializer.serializeList(batch.metrics);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(FormatState format, MetricState state) throws IOException {
+        return format.serializer.serialize(state.metric);
+    }
+
+    @Benchmark
+    public byte[] serializeList(FormatState format, BatchState batch) throws IOException {
+        return format.serializer.serializeList(batch.metrics);
+    }
+
+    @Benchmark
+    public MetricData deserialize(FormatState format) throws IOException {
+        return format.serializer.deserialize(format.bytes);
+    }
+
+    @Benchmark
+    public List<MetricData> deserializeList(FormatState format, FormatBatchState batch) throws IOException {
+        return format.serializer.deserializeList(batch.bytes);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.metrictank.MDMCachingDeserializer;
+import com.expedia.metrics.metrictank.PrimitiveMetricDefinitionCache;
+import com.expedia.metrics.metrictank.StripedMetricDefinitionCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+/**
+ * Measures the Kafka-mdm v2 read path, where most messages are MetricPoints resolved against cached definitions.
+ */
+@State(Scope.Thread)
+public class MDMCachingDeserializerBenchmark {
+    @Param({"guava", "primitive", "striped"})
+    public String cache;
+
+    private MDMCachingDeserializer deserializer;
+
+    @Setup
+    public void setUp(MetricState state) throws IOException {
+        if ("primitive".equals(cache)) {
+            deserializer = new MDMCachingDeserializer(new PrimitiveMetricDefinitionCache(1_000_000, Duration.ofMinutes(61)));
+        } else if ("striped".equals(cache)) {
+            deserializer = new MDMCachingDeserializer(new StripedMetricDefinitionCache(1_000_000, Duration.ofMinutes(61)));
+        } else {
+            deserializer = new MDMCachingDeserializer();
+        }
+        deserializer.deserialize(ByteBuffer.wrap(state.messagePackBytes));
+    }
+
+    @Benchmark
+    public MetricData deserializeMetricData(MetricState state) throws IOException {
+        return deserializer.deserialize(ByteBuffer.wrap(state.messagePackBytes));
+    }
+
+    @Benchmark
+    public MetricData deserializeCachedMetricPoint(MetricState state) throws IOException {
+        return deserializer.deserialize(ByteBuffer.wrap(state.mdmMetricPointBytes));
+    }
+}
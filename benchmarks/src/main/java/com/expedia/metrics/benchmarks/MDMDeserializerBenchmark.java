@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.metrictank.MDMData;
+import com.expedia.metrics.metrictank.MDMDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class MDMDeserializerBenchmark {
+    private static final MDMDeserializer DESERIALIZER = new MDMDeserializer();
+
+    @Benchmark
+    public MDMData deserializeMetricData(MetricState state) throws IOException {
+        return DESERIALIZER.deserialize(ByteBuffer.wrap(state.messagePackBytes));
+    }
+
+    @Benchmark
+    public MDMData deserializeMetricPoint(MetricState state) throws IOException {
+        return DESERIALIZER.deserialize(ByteBuffer.wrap(state.mdmMetricPointBytes));
+    }
+}
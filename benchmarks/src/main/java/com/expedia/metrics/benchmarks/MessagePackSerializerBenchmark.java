@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataBuffer;
+import com.expedia.metrics.metrictank.MessagePackSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+public class MessagePackSerializerBenchmark {
+    private static final MessagePackSerializer SERIALIZER = new MessagePackSerializer();
+
+    @Benchmark
+    public byte[] serialize(MetricState state) throws IOException {
+        return SERIALIZER.serialize(state.metric);
+    }
+
+    @Benchmark
+    public byte[] serializeList(BatchState batch) throws IOException {
+        return SERIALIZER.serializeList(batch.metrics);
+    }
+
+    @Benchmark
+    public byte[] serializeBuffer(BatchState batch) throws IOException {
+        return SERIALIZER.serialize(batch.buffer);
+    }
+
+    @Benchmark
+    public MetricData deserialize(MetricState state) throws IOException {
+        return SERIALIZER.deserialize(state.messagePackBytes);
+    }
+
+    @Benchmark
+    public List<MetricData> deserializeList(BatchState batch) throws IOException {
+        return SERIALIZER.deserializeList(batch.messagePackBytes);
+    }
+
+    @Benchmark
+    public MetricDataBuffer deserializeInto(BatchState batch, ResultState result) throws IOException {
+        result.buffer.clear();
+        SERIALIZER.deserializeInto(batch.messagePackBytes, result.buffer);
+        return result.buffer;
+    }
+
+    /**
+     * A buffer that each thread reuses across invocations, as a consumer would across batches
+     */
+    @State(Scope.Thread)
+    public static class ResultState {
+        public final MetricDataBuffer buffer = new MetricDataBuffer();
+    }
+}
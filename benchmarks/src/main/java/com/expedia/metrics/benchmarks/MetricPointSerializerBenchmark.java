@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.metrictank.MetricPoint;
+import com.expedia.metrics.metrictank.MetricPointSerializer;
+import com.expedia.metrics.metrictank.MetricPointVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+@State(Scope.Thread)
+public class MetricPointSerializerBenchmark implements MetricPointVisitor {
+    private final MetricPointSerializer serializer = new MetricPointSerializer();
+    private final ByteBuffer buffer = ByteBuffer.allocate(MetricPointSerializer.METRIC_POINT_BYTES);
+    private double sum;
+
+    @Benchmark
+    public ByteBuffer serialize(MetricState state) throws IOException {
+        buffer.clear();
+        serializer.serialize(state.metricPoint, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public MetricPoint deserialize(MetricState state) throws IOException {
+        return serializer.deserialize(state.metricPointBytes);
+    }
+
+    @Benchmark
+    public double visit(MetricState state) throws IOException {
+        sum = 0;
+        serializer.deserialize(ByteBuffer.wrap(state.metricPointBytes), this);
+        return sum;
+    }
+
+    @Override
+    public void visit(int orgId, long idHigh, long idLow, double value, long time) {
+        sum += value + time + orgId + idHigh + idLow;
+    }
+}
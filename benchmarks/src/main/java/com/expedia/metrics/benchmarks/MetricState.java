@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.benchmarks;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDefinition;
+import com.expedia.metrics.TagCollection;
+import com.expedia.metrics.metrictank.MessagePackSerializer;
+import com.expedia.metrics.metrictank.MetricPoint;
+import com.expedia.metrics.metrictank.MetricPointSerializer;
+import com.expedia.metrics.metrictank.MetricTankIdFactory;
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single metric and its serialized forms, parameterised by the shape of the metric definition.
+ */
+@State(Scope.Benchmark)
+public class MetricState {
+    @Param({"0", "4", "16"})
+    public int tagCount;
+
+    @Param({"16", "128"})
+    public int nameLength;
+
+    public MetricData metric;
+    // The definition of metric as a plain MetricDefinition, on which id factories memoize nothing
+    public MetricDefinition plainDefinition;
+    public MetricPoint metricPoint;
+    public byte[] messagePackBytes;
+    public byte[] metricPointBytes;
+    public byte[] mdmMetricPointBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        metric = createMetric(0);
+        final MetricDefinition definition = metric.getMetricDefinition();
+        plainDefinition = new MetricDefinition(definition.getKey(), definition.getTags(), definition.getMeta());
+        metricPoint = new MetricPoint(new MetricTankIdFactory().getKey(metric.getMetricDefinition()),
+                metric.getValue(), metric.getTimestamp());
+        messagePackBytes = new MessagePackSerializer().serialize(metric);
+        metricPointBytes = new MetricPointSerializer().serialize(metricPoint);
+        mdmMetricPointBytes = new byte[1 + metricPointBytes.length];
+        mdmMetricPointBytes[0] = 2;
+        System.arraycopy(metricPointBytes, 0, mdmMetricPointBytes, 1, metricPointBytes.length);
+    }
+
+    /**
+     * @param series distinguishes metrics that otherwise have the same shape
+     * @return a metric with a name of nameLength characters and tagCount key value tags
+     */
+    public MetricData createMetric(int series) {
+        final StringBuilder name = new StringBuilder(nameLength);
+        name.append("series").append(series).append('.');
+        while (name.length() < nameLength) {
+            name.append('a');
+        }
+        name.setLength(nameLength);
+
+        final Map<String, String> kv = new HashMap<>();
+        for (int i = 0; i < tagCount; i++) {
+            kv.put("tag" + i, "value" + i);
+        }
+        final MetricTankMetricDefinition definition = new MetricTankMetricDefinition(name.toString(),
+                new TagCollection(kv), TagCollection.EMPTY, 1, 15, "ms", "gauge");
+        return new MetricData(definition, 0.5202212202357678, 1533174724L + series);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.columnar;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDefinition;
+
+/**
+ * A batch of points held as columns: the distinct definitions of the batch, and for each point the index of its
+ * definition, its timestamp and its value. The arrays are not copied, so a batch can be built from and decoded into
+ * primitive arrays without creating a MetricData per point.
+ */
+public final class ColumnarBatch {
+    private final MetricDefinition[] definitions;
+    private final int[] definitionIndexes;
+    private final long[] timestamps;
+    private final double[] values;
+
+    /**
+     * @param definitions the distinct definitions of the batch
+     * @param definitionIndexes the index in definitions of the definition of each point
+     * @param timestamps the timestamp of each point
+     * @param values the value of each point
+     */
+    public ColumnarBatch(MetricDefinition[] definitions, int[] definitionIndexes, long[] timestamps, double[] values) {
+        if (definitions == null || definitionIndexes == null || timestamps == null || values == null) {
+            throw new IllegalArgumentException("definitions, definitionIndexes, timestamps and values are required");
+        }
+        if (definitionIndexes.length != timestamps.length || timestamps.length != values.length) {
+            throw new IllegalArgumentException("definitionIndexes, timestamps and values must have the same length");
+        }
+        for (MetricDefinition definition : definitions) {
+            if (definition == null) {
+                throw new IllegalArgumentException("definitions may not contain null");
+            }
+        }
+        for (int definitionIndex : definitionIndexes) {
+            if (definitionIndex < 0 || definitionIndex >= definitions.length) {
+                throw new IllegalArgumentException("Definition index " + definitionIndex + " is out of range");
+            }
+        }
+        this.definitions = definitions;
+        this.definitionIndexes = definitionIndexes;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    public MetricDefinition[] getDefinitions() {
+        return definitions;
+    }
+
+    public int[] getDefinitionIndexes() {
+        return definitionIndexes;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public MetricDefinition getMetricDefinition(int index) {
+        return definitions[definitionIndexes[index]];
+    }
+
+    /**
+     * @return a new MetricData for the point at the index
+     */
+    public MetricData getMetricData(int index) {
+        return new MetricData(getMetricDefinition(index), values[index], timestamps[index]);
+    }
+}
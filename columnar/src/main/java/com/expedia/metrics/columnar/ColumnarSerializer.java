@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.columnar;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataSerializer;
+import com.expedia.metrics.MetricDefinition;
+import com.expedia.metrics.gorilla.MetricDefinitionCodec;
+import com.expedia.metrics.gorilla.MetricDefinitionKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MetricDataSerializer that writes a batch as a dictionary of the strings of the batch, the distinct definitions
+ * written as references into that dictionary, and three fixed width columns holding the definition index, timestamp
+ * and value of each point. Tag keys, tag values, units and mtypes shared by many series are written once, and
+ * deserializeBatch copies the columns straight into primitive arrays.
+ * <p>
+ * The format is a version byte, then the string dictionary and the definitions, which MetricDefinitionCodec writes
+ * with each string as a varint reference into the dictionary, then the count of points and the int, long and double
+ * columns in big-endian order.
+ */
+public class ColumnarSerializer implements MetricDataSerializer {
+    private static final int VERSION = 1;
+    private static final int BYTES_PER_POINT = Integer.BYTES + Long.BYTES + Double.BYTES;
+
+    @Override
+    public byte[] serialize(MetricData metric) throws IOException {
+        return serializeList(Collections.singletonList(metric));
+    }
+
+    @Override
+    public byte[] serializeList(List<MetricData> metrics) throws IOException {
+        final Map<MetricDefinitionKey, Integer> definitionIndexes = new LinkedHashMap<>();
+        final int[] indexes = new int[metrics.size()];
+        final long[] timestamps = new long[metrics.size()];
+        final double[] values = new double[metrics.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            final MetricData metric = metrics.get(i);
+            final MetricDefinitionKey key = new MetricDefinitionKey(metric.getMetricDefinition());
+            Integer index = definitionIndexes.get(key);
+            if (index == null) {
+                index = definitionIndexes.size();
+                definitionIndexes.put(key, index);
+            }
+            indexes[i] = index;
+            timestamps[i] = metric.getTimestamp();
+            values[i] = metric.getValue();
+        }
+        final MetricDefinition[] definitions = new MetricDefinition[definitionIndexes.size()];
+        for (Map.Entry<MetricDefinitionKey, Integer> entry : definitionIndexes.entrySet()) {
+            definitions[entry.getValue()] = entry.getKey().getMetricDefinition();
+        }
+        return serializeBatch(new ColumnarBatch(definitions, indexes, timestamps, values));
+    }
+
+    public byte[] serializeBatch(ColumnarBatch batch) throws IOException {
+        final MetricDefinition[] definitions = batch.getDefinitions();
+        final StringDictionary dictionary = new StringDictionary();
+        final ByteArrayOutputStream definitionBytes = new ByteArrayOutputStream();
+        final DataOutputStream definitionOut = new DataOutputStream(definitionBytes);
+        for (MetricDefinition definition : definitions) {
+            MetricDefinitionCodec.writeDefinition(definitionOut, definition, dictionary);
+        }
+
+        final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        final DataOutputStream headerOut = new DataOutputStream(headerBytes);
+        headerOut.writeByte(VERSION);
+        MetricDefinitionCodec.writeVarint(headerOut, dictionary.strings.size());
+        for (String string : dictionary.strings) {
+            final byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            MetricDefinitionCodec.writeVarint(headerOut, utf8.length);
+            headerOut.write(utf8);
+        }
+        MetricDefinitionCodec.writeVarint(headerOut, definitions.length);
+        definitionBytes.writeTo(headerOut);
+        MetricDefinitionCodec.writeVarint(headerOut, batch.size());
+
+        final ByteBuffer buffer = ByteBuffer.allocate(headerBytes.size() + BYTES_PER_POINT * batch.size());
+        buffer.put(headerBytes.toByteArray());
+        buffer.asIntBuffer().put(batch.getDefinitionIndexes());
+        buffer.position(buffer.position() + Integer.BYTES * batch.size());
+        buffer.asLongBuffer().put(batch.getTimestamps());
+        buffer.position(buffer.position() + Long.BYTES * batch.size());
+        buffer.asDoubleBuffer().put(batch.getValues());
+        return buffer.array();
+    }
+
+    /**
+     * @throws IOException if the bytes don't hold exactly one MetricData
+     */
+    @Override
+    public MetricData deserialize(byte[] bytes) throws IOException {
+        final ColumnarBatch batch = deserializeBatch(bytes);
+        if (batch.size() != 1) {
+            throw new IOException("Expected one MetricData but found " + batch.size());
+        }
+        return batch.getMetricData(0);
+    }
+
+    @Override
+    public List<MetricData> deserializeList(byte[] bytes) throws IOException {
+        final ColumnarBatch batch = deserializeBatch(bytes);
+        final List<MetricData> metrics = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            metrics.add(batch.getMetricData(i));
+        }
+        return metrics;
+    }
+
+    public ColumnarBatch deserializeBatch(byte[] bytes) throws IOException {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            final int version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported columnar version " + version);
+            }
+            final String[] strings = new String[MetricDefinitionCodec.readCount(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                final int length = MetricDefinitionCodec.readCount(buffer);
+                strings[i] = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            final MetricDefinition[] definitions = new MetricDefinition[MetricDefinitionCodec.readCount(buffer)];
+            for (int i = 0; i < definitions.length; i++) {
+                definitions[i] = MetricDefinitionCodec.readDefinition(buffer, b -> readReference(b, strings));
+            }
+            final int size = MetricDefinitionCodec.readCount(buffer);
+            if ((long) size * BYTES_PER_POINT != buffer.remaining()) {
+                throw new IOException("Expected " + (long) size * BYTES_PER_POINT + " bytes of columns but found "
+                        + buffer.remaining());
+            }
+            final int[] definitionIndexes = new int[size];
+            final long[] timestamps = new long[size];
+            final double[] values = new double[size];
+            buffer.asIntBuffer().get(definitionIndexes);
+            buffer.position(buffer.position() + Integer.BYTES * size);
+            buffer.asLongBuffer().get(timestamps);
+            buffer.position(buffer.position() + Long.BYTES * size);
+            buffer.asDoubleBuffer().get(values);
+            return new ColumnarBatch(definitions, definitionIndexes, timestamps, values);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Unexpected end of columnar data", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid columnar data", e);
+        }
+    }
+
+    /**
+     * Reads a reference to a string in the dictionary, where 0 is null and n is strings[n - 1]
+     */
+    private static String readReference(ByteBuffer buffer, String[] strings) throws IOException {
+        final int reference = MetricDefinitionCodec.readVarint(buffer);
+        if (reference == 0) {
+            return null;
+        }
+        if (reference < 0 || reference > strings.length) {
+            throw new IOException("String reference " + reference + " is out of range");
+        }
+        return strings[reference - 1];
+    }
+
+    /**
+     * Assigns each distinct string of a batch a reference, in the order they are first seen, and writes strings as
+     * their references
+     */
+    private static final class StringDictionary implements MetricDefinitionCodec.StringWriter {
+        private final Map<String, Integer> references = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        private int reference(String string) {
+            if (string == null) {
+                return 0;
+            }
+            Integer reference = references.get(string);
+            if (reference == null) {
+                strings.add(string);
+                reference = strings.size();
+                references.put(string, reference);
+            }
+            return reference;
+        }
+
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            MetricDefinitionCodec.writeVarint(out, reference(value));
+        }
+    }
+}
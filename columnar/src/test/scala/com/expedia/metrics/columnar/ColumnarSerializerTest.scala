@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.columnar
+
+import java.io.IOException
+import java.util.Arrays
+
+import com.expedia.metrics.metrictank.{MessagePackSerializer, MetricTankMetricDefinition}
+import com.expedia.metrics.{MetricData, MetricDefinition, TagCollection}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class ColumnarSerializerTest extends FunSpec with Matchers with GivenWhenThen {
+  private val serializer = new ColumnarSerializer()
+
+  private def definition(series: Int) = new MetricTankMetricDefinition("series." + series,
+    new TagCollection(Map("host" -> ("host-" + series % 4), "region" -> "us-west-2", MetricDefinition.UNIT -> "ms").asJava),
+    TagCollection.EMPTY, 1, 10, "ms", "gauge")
+
+  describe("ColumnarSerializer") {
+    it("should round trip a MetricData") {
+      val metric = new MetricData(definition(1), 0.5202212202357678, 1533174724L)
+      serializer.deserialize(serializer.serialize(metric)) should be(metric)
+    }
+
+    it("should round trip a list of many series in order") {
+      Given("interleaved points of 100 series that share tag keys and values")
+      val definitions = (0 until 100).map(definition)
+      val metrics = for (i <- 0 until 10; s <- 0 until 100) yield new MetricData(definitions(s), i * 0.5, 1533174720L + 10 * i)
+
+      When("serializing the list")
+      val bytes = serializer.serializeList(metrics.asJava)
+
+      Then("it is smaller than the MessagePack list")
+      bytes.length * 4 should be < new MessagePackSerializer().serializeList(metrics.asJava).length
+
+      And("it reads back the same points in the same order")
+      serializer.deserializeList(bytes).asScala should be(metrics)
+    }
+
+    it("should decode a batch into primitive columns") {
+      Given("a batch built from primitive arrays")
+      val definitions = Array[MetricDefinition](definition(1), new MetricDefinition("plain",
+        new TagCollection(Map("k" -> "v").asJava, Set("v1").asJava), new TagCollection(Map("m" -> "1").asJava)))
+      val batch = new ColumnarBatch(definitions, Array(0, 1, 0), Array(10L, 20L, Long.MinValue), Array(1.5, Double.NaN, -0.0))
+
+      When("round tripping the batch")
+      val deserialized = serializer.deserializeBatch(serializer.serializeBatch(batch))
+
+      Then("the columns and definitions are the same")
+      deserialized.size should be(3)
+      deserialized.getDefinitionIndexes should be(Array(0, 1, 0))
+      deserialized.getTimestamps should be(Array(10L, 20L, Long.MinValue))
+      deserialized.getValues.map(java.lang.Double.doubleToRawLongBits) should be(batch.getValues.map(java.lang.Double.doubleToRawLongBits))
+      deserialized.getDefinitions.toSeq should be(definitions.toSeq)
+      deserialized.getMetricDefinition(1).getMeta should be(definitions(1).getMeta)
+      deserialized.getMetricDefinition(0) shouldBe a[MetricTankMetricDefinition]
+    }
+
+    it("should reject a batch with a definition index out of range") {
+      an[IllegalArgumentException] should be thrownBy new ColumnarBatch(Array(definition(1)), Array(1), Array(1L), Array(1.0))
+    }
+
+    it("should fail to deserialize truncated or unknown data") {
+      val bytes = serializer.serializeList((0 until 10).map(i => new MetricData(definition(i), i, i)).asJava)
+      an[IOException] should be thrownBy serializer.deserializeList(Arrays.copyOf(bytes, bytes.length - 1))
+      an[IOException] should be thrownBy serializer.deserializeList(Arrays.copyOf(bytes, 10))
+      an[IOException] should be thrownBy serializer.deserializeList(Array[Byte](9))
+      an[IOException] should be thrownBy serializer.deserialize(bytes)
+    }
+  }
+}
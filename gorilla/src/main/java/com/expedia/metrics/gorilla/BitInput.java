@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Reads the bits written by a BitOutput
+ */
+final class BitInput {
+    private final byte[] bytes;
+    private int position;
+    // The number of bits of bytes[position] that have been read
+    private int bitOffset;
+
+    BitInput(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    boolean readBit() throws IOException {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * @param count between 0 and 64
+     */
+    long readBits(int count) throws IOException {
+        long result = 0;
+        while (count > 0) {
+            if (position == bytes.length) {
+                throw new EOFException("Unexpected end of Gorilla data");
+            }
+            final int available = 8 - bitOffset;
+            final int n = Math.min(available, count);
+            result = (result << n) | ((bytes[position] >>> (available - n)) & ((1 << n) - 1));
+            bitOffset += n;
+            count -= n;
+            if (bitOffset == 8) {
+                position++;
+                bitOffset = 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Skips to the start of the next byte
+     */
+    void align() {
+        if (bitOffset > 0) {
+            position++;
+            bitOffset = 0;
+        }
+    }
+
+    /**
+     * @return the index of the next byte to read, which is the current byte unless some of its bits have been read
+     */
+    int position() {
+        return bitOffset > 0 ? position + 1 : position;
+    }
+
+    /**
+     * Moves to the start of the byte at position
+     */
+    void seek(int position) {
+        this.position = position;
+        bitOffset = 0;
+    }
+}
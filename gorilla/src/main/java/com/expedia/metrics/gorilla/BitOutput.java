@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable buffer that bits are written to most significant bit first. As an OutputStream it writes whole bytes,
+ * so that byte oriented data can be written through a DataOutputStream.
+ */
+final class BitOutput extends OutputStream {
+    private byte[] bytes = new byte[256];
+    private int size;
+    // The bits of the byte being filled, in the low currentBits bits
+    private int current;
+    private int currentBits;
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the low count bits of the value, most significant first
+     * @param count between 0 and 64
+     */
+    void writeBits(long value, int count) {
+        while (count > 0) {
+            final int n = Math.min(8 - currentBits, count);
+            current = (current << n) | ((int) (value >>> (count - n)) & ((1 << n) - 1));
+            currentBits += n;
+            count -= n;
+            if (currentBits == 8) {
+                putByte((byte) current);
+                current = 0;
+                currentBits = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the low 8 bits of b
+     */
+    @Override
+    public void write(int b) {
+        writeBits(b, 8);
+    }
+
+    /**
+     * Pads the current byte with zero bits
+     */
+    void align() {
+        if (currentBits > 0) {
+            writeBits(0, 8 - currentBits);
+        }
+    }
+
+    byte[] toByteArray() {
+        align();
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void putByte(byte b) {
+        if (size == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        bytes[size++] = b;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataSerializer;
+import com.expedia.metrics.MetricDefinition;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MetricDataSerializer that compresses batches of MetricData in the style of the Gorilla time series database, see
+ * http://www.vldb.org/pvldb/vol8/p1816-teller.pdf. The points of a list are grouped by series and each definition is
+ * written once. Timestamps are written as the change in the delta between consecutive points, and values as the XOR
+ * of consecutive values, so regularly spaced points whose values change slowly cost a few bits each.
+ * <p>
+ * serializeList keeps the order of the points of each series, but writes the series one after another in the order
+ * they first appear, so deserializeList returns the points grouped by series rather than in their original order.
+ * Definitions are written by MetricDefinitionCodec with inline strings.
+ */
+public class GorillaSerializer implements MetricDataSerializer {
+    private static final int VERSION = 1;
+
+    // A delta of delta that fits in DELTA_OF_DELTA_BITS[i] bits is written after a prefix of i + 1 one bits and a
+    // zero bit. Anything larger is written in full after a prefix of four one bits.
+    private static final int[] DELTA_OF_DELTA_BITS = {7, 9, 12};
+    private static final int LARGE_DELTA_OF_DELTA_PREFIX = 0b1111;
+
+    @Override
+    public byte[] serialize(MetricData metric) throws IOException {
+        return serializeList(Collections.singletonList(metric));
+    }
+
+    @Override
+    public byte[] serializeList(List<MetricData> metrics) throws IOException {
+        final Map<MetricDefinitionKey, List<MetricData>> series = new LinkedHashMap<>();
+        for (MetricData metric : metrics) {
+            series.computeIfAbsent(new MetricDefinitionKey(metric.getMetricDefinition()), key -> new ArrayList<>()).add(metric);
+        }
+        final BitOutput out = new BitOutput();
+        // The definitions and counts are whole bytes that start on a byte boundary
+        final DataOutputStream bytes = new DataOutputStream(out);
+        bytes.writeByte(VERSION);
+        MetricDefinitionCodec.writeVarint(bytes, series.size());
+        for (Map.Entry<MetricDefinitionKey, List<MetricData>> entry : series.entrySet()) {
+            MetricDefinitionCodec.writeDefinition(bytes, entry.getKey().getMetricDefinition(), MetricDefinitionCodec::writeString);
+            final List<MetricData> points = entry.getValue();
+            MetricDefinitionCodec.writeVarint(bytes, points.size());
+            final PointEncoder encoder = new PointEncoder(out);
+            for (MetricData point : points) {
+                encoder.write(point.getTimestamp(), point.getValue());
+            }
+            out.align();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes don't hold exactly one MetricData
+     */
+    @Override
+    public MetricData deserialize(byte[] bytes) throws IOException {
+        final List<MetricData> metrics = deserializeList(bytes);
+        if (metrics.size() != 1) {
+            throw new IOException("Expected one MetricData but found " + metrics.size());
+        }
+        return metrics.get(0);
+    }
+
+    @Override
+    public List<MetricData> deserializeList(byte[] bytes) throws IOException {
+        try {
+            // The definitions and counts are read from the buffer and the points from the bits that follow them
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            final BitInput in = new BitInput(bytes);
+            final int version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported Gorilla version " + version);
+            }
+            final int seriesCount = MetricDefinitionCodec.readCount(buffer);
+            final List<MetricData> metrics = new ArrayList<>();
+            for (int s = 0; s < seriesCount; s++) {
+                final MetricDefinition definition = MetricDefinitionCodec.readDefinition(buffer, MetricDefinitionCodec::readString);
+                // A point can take less than a byte, so the count is not bounded by the remaining bytes
+                final int pointCount = MetricDefinitionCodec.readVarint(buffer);
+                if (pointCount < 0) {
+                    throw new IOException("Negative count " + pointCount);
+                }
+                in.seek(buffer.position());
+                final PointDecoder decoder = new PointDecoder(in);
+                for (int p = 0; p < pointCount; p++) {
+                    decoder.read();
+                    metrics.add(new MetricData(definition, decoder.value, decoder.timestamp));
+                }
+                in.align();
+                buffer.position(in.position());
+            }
+            return metrics;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Unexpected end of Gorilla data", e);
+        }
+    }
+
+    private static boolean fitsInBits(long value, int bits) {
+        final long limit = 1L << (bits - 1);
+        return value >= -limit && value < limit;
+    }
+
+    /**
+     * Writes the points of one series
+     */
+    private static final class PointEncoder {
+        private final BitOutput out;
+        private boolean first = true;
+        private long previousTimestamp;
+        private long previousDelta;
+        private long previousValueBits;
+        // The window of meaningful bits of the last XOR that was written with its own window, or -1 if none was
+        private int previousLeading = -1;
+        private int previousTrailing;
+
+        private PointEncoder(BitOutput out) {
+            this.out = out;
+        }
+
+        private void write(long timestamp, double value) {
+            final long valueBits = Double.doubleToRawLongBits(value);
+            if (first) {
+                out.writeBits(timestamp, 64);
+                out.writeBits(valueBits, 64);
+                first = false;
+            } else {
+                final long delta = timestamp - previousTimestamp;
+                writeDeltaOfDelta(delta - previousDelta);
+                writeXor(valueBits ^ previousValueBits);
+                previousDelta = delta;
+            }
+            previousTimestamp = timestamp;
+            previousValueBits = valueBits;
+        }
+
+        private void writeDeltaOfDelta(long deltaOfDelta) {
+            if (deltaOfDelta == 0) {
+                out.writeBit(false);
+                return;
+            }
+            for (int i = 0; i < DELTA_OF_DELTA_BITS.length; i++) {
+                if (fitsInBits(deltaOfDelta, DELTA_OF_DELTA_BITS[i])) {
+                    out.writeBits((1 << (i + 2)) - 2, i + 2);
+                    out.writeBits(deltaOfDelta, DELTA_OF_DELTA_BITS[i]);
+                    return;
+                }
+            }
+            out.writeBits(LARGE_DELTA_OF_DELTA_PREFIX, 4);
+            out.writeBits(deltaOfDelta, 64);
+        }
+
+        private void writeXor(long xor) {
+            if (xor == 0) {
+                out.writeBit(false);
+                return;
+            }
+            out.writeBit(true);
+            // The leading zero count is written in five bits
+            final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            final int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                out.writeBit(false);
+                out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                final int meaningful = 64 - leading - trailing;
+                out.writeBit(true);
+                out.writeBits(leading, 5);
+                // 64 meaningful bits are written as 0
+                out.writeBits(meaningful, 6);
+                out.writeBits(xor >>> trailing, meaningful);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+    }
+
+    /**
+     * Reads the points of one series
+     */
+    private static final class PointDecoder {
+        private final BitInput in;
+        private boolean first = true;
+        private long timestamp;
+        private long delta;
+        private long valueBits;
+        private double value;
+        private int previousLeading;
+        private int previousTrailing;
+
+        private PointDecoder(BitInput in) {
+            this.in = in;
+        }
+
+        private void read() throws IOException {
+            if (first) {
+                timestamp = in.readBits(64);
+                valueBits = in.readBits(64);
+                first = false;
+            } else {
+                delta += readDeltaOfDelta();
+                timestamp += delta;
+                valueBits ^= readXor();
+            }
+            value = Double.longBitsToDouble(valueBits);
+        }
+
+        private long readDeltaOfDelta() throws IOException {
+            int prefix = 0;
+            while (prefix < DELTA_OF_DELTA_BITS.length + 1 && in.readBit()) {
+                prefix++;
+            }
+            if (prefix == 0) {
+                return 0;
+            }
+            if (prefix > DELTA_OF_DELTA_BITS.length) {
+                return in.readBits(64);
+            }
+            final int bits = DELTA_OF_DELTA_BITS[prefix - 1];
+            // Sign extend
+            return in.readBits(bits) << (64 - bits) >> (64 - bits);
+        }
+
+        private long readXor() throws IOException {
+            if (!in.readBit()) {
+                return 0;
+            }
+            if (in.readBit()) {
+                previousLeading = (int) in.readBits(5);
+                final int meaningful = (int) in.readBits(6);
+                previousTrailing = 64 - previousLeading - (meaningful == 0 ? 64 : meaningful);
+                if (previousTrailing < 0) {
+                    throw new IOException("Malformed value");
+                }
+            }
+            return in.readBits(64 - previousLeading - previousTrailing) << previousTrailing;
+        }
+    }
+}
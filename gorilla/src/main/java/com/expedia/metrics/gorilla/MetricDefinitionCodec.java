@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla;
+
+import com.expedia.metrics.MetricDefinition;
+import com.expedia.metrics.TagCollection;
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes MetricDefinitions in the compact binary form shared by GorillaSerializer and the columnar module's
+ * ColumnarSerializer. A definition is a kind byte, 0 for a MetricDefinition and 1 for a MetricTankMetricDefinition,
+ * then the key, the tags and the meta tags, and for a MetricTankMetricDefinition the big-endian org id and interval
+ * followed by the unit and mtype. Tags are a count of key value tags and their keys and values, then a count of
+ * value tags and their values. Counts are unsigned LEB128 varints, and each format decides how strings are written,
+ * e.g. inline with writeString or as references into a dictionary. Other subclasses are read back as a
+ * MetricDefinition.
+ * <p>
+ * Reads throw BufferUnderflowException when the buffer ends early, which callers report as an IOException. This class
+ * is public only so that the columnar module can share the encoding, and is not part of the supported API.
+ */
+public final class MetricDefinitionCodec {
+    private static final int PLAIN_DEFINITION = 0;
+    private static final int METRIC_TANK_DEFINITION = 1;
+
+    // Varints of up to five bytes hold a 32 bit int
+    private static final int MAX_VARINT_SHIFT = 28;
+
+    /**
+     * Writes a string, which may be null, in the format's encoding
+     */
+    public interface StringWriter {
+        void write(DataOutput out, String value) throws IOException;
+    }
+
+    /**
+     * Reads a string written by the matching StringWriter
+     */
+    public interface StringReader {
+        String read(ByteBuffer buffer) throws IOException;
+    }
+
+    private MetricDefinitionCodec() {
+    }
+
+    public static void writeDefinition(DataOutput out, MetricDefinition definition, StringWriter strings) throws IOException {
+        final boolean metricTank = definition instanceof MetricTankMetricDefinition;
+        out.writeByte(metricTank ? METRIC_TANK_DEFINITION : PLAIN_DEFINITION);
+        strings.write(out, definition.getKey());
+        writeTags(out, definition.getTags(), strings);
+        writeTags(out, definition.getMeta(), strings);
+        if (metricTank) {
+            final MetricTankMetricDefinition metricTankDefinition = (MetricTankMetricDefinition) definition;
+            out.writeInt(metricTankDefinition.getOrgId());
+            out.writeInt(metricTankDefinition.getInterval());
+            strings.write(out, metricTankDefinition.getUnit());
+            strings.write(out, metricTankDefinition.getMtype());
+        }
+    }
+
+    public static MetricDefinition readDefinition(ByteBuffer buffer, StringReader strings) throws IOException {
+        final int kind = buffer.get();
+        if (kind != PLAIN_DEFINITION && kind != METRIC_TANK_DEFINITION) {
+            throw new IOException("Unknown definition kind " + kind);
+        }
+        final String key = strings.read(buffer);
+        final TagCollection tags = readTags(buffer, strings);
+        final TagCollection meta = readTags(buffer, strings);
+        if (kind == PLAIN_DEFINITION) {
+            return new MetricDefinition(key, tags, meta);
+        }
+        final int orgId = buffer.getInt();
+        final int interval = buffer.getInt();
+        final String unit = strings.read(buffer);
+        final String mtype = strings.read(buffer);
+        try {
+            return new MetricTankMetricDefinition(key, tags, meta, orgId, interval, unit, mtype);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid MetricTankMetricDefinition", e);
+        }
+    }
+
+    /**
+     * Writes a string inline as a varint of its UTF-8 length plus one, or zero for null, followed by its UTF-8 bytes
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf8.length + 1);
+        out.write(utf8);
+    }
+
+    /**
+     * Reads a string written by writeString from a buffer backed by an array
+     */
+    public static String readString(ByteBuffer buffer) throws IOException {
+        final int length = readVarint(buffer);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > buffer.remaining()) {
+            throw new IOException("String of " + (length - 1) + " bytes exceeds the remaining data");
+        }
+        final int offset = buffer.arrayOffset() + buffer.position();
+        final String value = new String(buffer.array(), offset, length - 1, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length - 1);
+        return value;
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint
+     */
+    public static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarint(ByteBuffer buffer) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += 7) {
+            final int b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a varint count of items that each take at least one byte, so that it can't exceed the remaining bytes
+     */
+    public static int readCount(ByteBuffer buffer) throws IOException {
+        final int count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IOException("Count " + count + " exceeds the remaining data");
+        }
+        return count;
+    }
+
+    private static void writeTags(DataOutput out, TagCollection tags, StringWriter strings) throws IOException {
+        writeVarint(out, tags.kvSize());
+        for (int i = 0; i < tags.kvSize(); i++) {
+            strings.write(out, tags.getKvKey(i));
+            strings.write(out, tags.getKvValue(i));
+        }
+        writeVarint(out, tags.vSize());
+        for (int i = 0; i < tags.vSize(); i++) {
+            strings.write(out, tags.getV(i));
+        }
+    }
+
+    private static TagCollection readTags(ByteBuffer buffer, StringReader strings) throws IOException {
+        final int kvSize = readCount(buffer);
+        final Map<String, String> kv = new HashMap<>();
+        for (int i = 0; i < kvSize; i++) {
+            kv.put(strings.read(buffer), strings.read(buffer));
+        }
+        final int vSize = readCount(buffer);
+        final Set<String> v = new HashSet<>();
+        for (int i = 0; i < vSize; i++) {
+            v.add(strings.read(buffer));
+        }
+        if (kv.isEmpty() && v.isEmpty()) {
+            return TagCollection.EMPTY;
+        }
+        return new TagCollection(kv, v);
+    }
+}
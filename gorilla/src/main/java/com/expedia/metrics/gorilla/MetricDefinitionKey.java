@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla;
+
+import com.expedia.metrics.MetricDefinition;
+
+/**
+ * Compares definitions including the meta tags, which MetricDefinition.equals ignores, so that serializers that
+ * write each distinct definition of a batch once keep definitions that differ only in their meta tags apart
+ */
+public final class MetricDefinitionKey {
+    private final MetricDefinition definition;
+
+    public MetricDefinitionKey(MetricDefinition definition) {
+        if (definition == null) {
+            throw new IllegalArgumentException("definition is required");
+        }
+        this.definition = definition;
+    }
+
+    public MetricDefinition getMetricDefinition() {
+        return definition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MetricDefinitionKey)) return false;
+        final MetricDefinition that = ((MetricDefinitionKey) o).definition;
+        return definition.equals(that) && definition.getMeta().equals(that.getMeta());
+    }
+
+    @Override
+    public int hashCode() {
+        return definition.hashCode();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla
+
+import java.io.IOException
+import java.util.Arrays
+
+import com.expedia.metrics.metrictank.{MessagePackSerializer, MetricTankMetricDefinition}
+import com.expedia.metrics.{MetricData, MetricDefinition, TagCollection}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class GorillaSerializerTest extends FunSpec with Matchers with GivenWhenThen {
+  private val serializer = new GorillaSerializer()
+
+  private def definition(series: Int) = new MetricTankMetricDefinition("series." + series,
+    new TagCollection(Map("host" -> "a", MetricDefinition.UNIT -> "P").asJava), TagCollection.EMPTY, 1, 10, "P", "gauge")
+
+  describe("GorillaSerializer") {
+    it("should round trip a MetricData") {
+      val metric = new MetricData(definition(1), 0.5202212202357678, 1533174724L)
+      serializer.deserialize(serializer.serialize(metric)) should be(metric)
+    }
+
+    it("should group the points of a list by series and compress them") {
+      Given("interleaved points of ten series at a regular interval with slowly changing values")
+      val definitions = (0 until 10).map(definition)
+      val metrics = for (i <- 0 until 1000; s <- 0 until 10) yield new MetricData(definitions(s), i / 10 + s, 1533174720L + 10 * i)
+
+      When("serializing the list")
+      val bytes = serializer.serializeList(metrics.asJava)
+
+      Then("it is at least ten times smaller than the MessagePack list")
+      bytes.length * 10 should be < new MessagePackSerializer().serializeList(metrics.asJava).length
+
+      And("it reads back the points grouped by series, in order within each series")
+      serializer.deserializeList(bytes).asScala should be(metrics.sortBy(_.getMetricDefinition.getKey))
+    }
+
+    it("should round trip timestamps and values exactly") {
+      Given("points with irregular timestamps and special values")
+      val timestamps = Seq(Long.MinValue, Long.MaxValue, 0L, -5L, 1L << 40, 3L, 3L, 3L, 100000L, 99999L)
+      val values = Seq(Double.NaN, -0.0, 0.0, Double.MaxValue, Double.MinPositiveValue, Double.NegativeInfinity, 1e-300, 0.1, 0.2, 42.0)
+      val metrics = timestamps.zip(values).map { case (t, v) => new MetricData(definition(1), v, t) }
+
+      When("round tripping the points")
+      val deserialized = serializer.deserializeList(serializer.serializeList(metrics.asJava)).asScala
+
+      Then("every timestamp and every bit of every value is kept")
+      deserialized.map(_.getTimestamp) should be(timestamps)
+      deserialized.map(m => java.lang.Double.doubleToRawLongBits(m.getValue)) should be(values.map(java.lang.Double.doubleToRawLongBits))
+    }
+
+    it("should keep the meta tags and type of each definition") {
+      val meta1 = new MetricDefinition("a", TagCollection.EMPTY, new TagCollection(Map("m" -> "1").asJava))
+      val meta2 = new MetricDefinition("a", TagCollection.EMPTY, new TagCollection(Map("m" -> "2").asJava))
+      val valueTags = new MetricDefinition(null, new TagCollection(Map("k" -> "v").asJava, Set("v1").asJava), TagCollection.EMPTY)
+      val metrics = Seq(meta1, meta2, valueTags, definition(2)).map(d => new MetricData(d, 1.0, 100L))
+
+      val deserialized = serializer.deserializeList(serializer.serializeList(metrics.asJava)).asScala
+
+      deserialized should be(metrics)
+      deserialized.map(_.getMetricDefinition.getMeta) should be(metrics.map(_.getMetricDefinition.getMeta))
+      deserialized.last.getMetricDefinition shouldBe a[MetricTankMetricDefinition]
+    }
+
+    it("should fail to deserialize truncated or unknown data") {
+      val bytes = serializer.serializeList((0 until 100).map(i => new MetricData(definition(1), i, i)).asJava)
+      an[IOException] should be thrownBy serializer.deserializeList(Arrays.copyOf(bytes, bytes.length / 2))
+      an[IOException] should be thrownBy serializer.deserializeList(Array[Byte](9))
+      an[IOException] should be thrownBy serializer.deserialize(bytes)
+    }
+  }
+}
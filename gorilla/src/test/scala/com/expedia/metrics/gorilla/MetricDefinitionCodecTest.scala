@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.gorilla
+
+import java.io.{ByteArrayOutputStream, DataOutput, DataOutputStream, IOException}
+import java.nio.ByteBuffer
+
+import com.expedia.metrics.{MetricDefinition, TagCollection}
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class MetricDefinitionCodecTest extends FunSpec with Matchers with GivenWhenThen {
+  private val inlineWriter = new MetricDefinitionCodec.StringWriter {
+    override def write(out: DataOutput, value: String): Unit = MetricDefinitionCodec.writeString(out, value)
+  }
+  private val inlineReader = new MetricDefinitionCodec.StringReader {
+    override def read(buffer: ByteBuffer): String = MetricDefinitionCodec.readString(buffer)
+  }
+
+  private def write(f: DataOutputStream => Unit): ByteBuffer = {
+    val bytes = new ByteArrayOutputStream()
+    f(new DataOutputStream(bytes))
+    ByteBuffer.wrap(bytes.toByteArray)
+  }
+
+  describe("MetricDefinitionCodec") {
+    val tags = new TagCollection(Map("host" -> "a", "unit" -> "P").asJava, Set("valuetag").asJava)
+    val meta = new TagCollection(Map("source" -> "test").asJava)
+
+    it("should round trip a MetricTankMetricDefinition and a plain MetricDefinition") {
+      Given("a MetricTankMetricDefinition and a plain MetricDefinition with no key")
+      val metricTank = new MetricTankMetricDefinition("a", tags, meta, 3, 60, "P", "gauge")
+      val plain = new MetricDefinition(null, tags, TagCollection.EMPTY)
+
+      When("writing and reading them with inline strings")
+      val buffer = write { out =>
+        MetricDefinitionCodec.writeDefinition(out, metricTank, inlineWriter)
+        MetricDefinitionCodec.writeDefinition(out, plain, inlineWriter)
+      }
+      val readMetricTank = MetricDefinitionCodec.readDefinition(buffer, inlineReader)
+      val readPlain = MetricDefinitionCodec.readDefinition(buffer, inlineReader)
+
+      Then("both should be read back with their meta tags and the buffer consumed")
+      readMetricTank should be(metricTank)
+      readMetricTank.getMeta should be(meta)
+      readPlain.getClass should be(classOf[MetricDefinition])
+      readPlain should be(plain)
+      buffer.hasRemaining should be(false)
+    }
+
+    it("should round trip varints") {
+      val values = Seq(0, 1, 127, 128, 16383, 16384, Int.MaxValue, -1, Int.MinValue)
+      val buffer = write(out => values.foreach(MetricDefinitionCodec.writeVarint(out, _)))
+      values.map(_ => MetricDefinitionCodec.readVarint(buffer)) should be(values)
+      buffer.hasRemaining should be(false)
+    }
+
+    it("should reject malformed data") {
+      an[IOException] should be thrownBy MetricDefinitionCodec.readVarint(ByteBuffer.wrap(Array.fill(6)(0xff.toByte)))
+      an[IOException] should be thrownBy MetricDefinitionCodec.readCount(ByteBuffer.wrap(Array(5.toByte, 0.toByte)))
+      an[IOException] should be thrownBy MetricDefinitionCodec.readString(ByteBuffer.wrap(Array(5.toByte, 'a'.toByte)))
+      an[IOException] should be thrownBy MetricDefinitionCodec.readDefinition(ByteBuffer.wrap(Array(7.toByte)), inlineReader)
+    }
+  }
+
+  describe("MetricDefinitionKey") {
+    it("should tell apart definitions that differ only in their meta tags") {
+      val definition = new MetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY)
+      val withMeta = new MetricDefinition("a", TagCollection.EMPTY, new TagCollection(Map("m" -> "1").asJava))
+
+      definition should equal(withMeta)
+      new MetricDefinitionKey(definition) should not equal new MetricDefinitionKey(withMeta)
+      new MetricDefinitionKey(definition) should equal(new MetricDefinitionKey(new MetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY)))
+      new MetricDefinitionKey(withMeta).getMetricDefinition should be theSameInstanceAs withMeta
+    }
+  }
+}
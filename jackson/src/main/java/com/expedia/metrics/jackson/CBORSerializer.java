@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * MetricDataSerializer that reads and writes CBOR (RFC 7049) with the same mappings as JacksonSerializer. CBOR has
+ * no back-references in Jackson 2.9, so repeated names are written in full; use SmileSerializer where payload size
+ * matters more than interoperability. The streaming writeValues methods write a sequence of root-level CBOR values
+ * rather than newline-delimited JSON.
+ */
+public class CBORSerializer extends JacksonSerializer {
+
+    public CBORSerializer() {
+        this(new CBORFactory());
+    }
+
+    public CBORSerializer(CBORFactory factory) {
+        super(new ObjectMapper(factory));
+    }
+}
@@ -16,15 +16,26 @@
 package com.expedia.metrics.jackson;
 
 import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataBuffer;
 import com.expedia.metrics.MetricDataSerializer;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class JacksonSerializer implements MetricDataSerializer {
     private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ObjectWriter sequenceWriter;
 
     public JacksonSerializer() {
         this(new ObjectMapper());
@@ -33,6 +44,10 @@ public class JacksonSerializer implements MetricDataSerializer {
     public JacksonSerializer(ObjectMapper mapper) {
         this.mapper = mapper;
         mapper.registerModule(new MetricsJavaModule());
+        reader = mapper.readerFor(MetricData.class);
+        writer = mapper.writerFor(MetricData.class);
+        // Binary formats such as Smile and CBOR delimit root-level values themselves and don't accept a separator
+        sequenceWriter = mapper.getFactory().canHandleBinaryNatively() ? writer : writer.withRootValueSeparator("\n");
     }
 
     @Override
@@ -54,4 +69,82 @@ public class JacksonSerializer implements MetricDataSerializer {
     public List<MetricData> deserializeList(byte[] bytes) throws IOException {
         return mapper.readValue(bytes, new TypeReference<List<MetricData>>() {});
     }
+
+    /**
+     * Encodes the points of the MetricDataBuffer as an array of MetricData, the same bytes serializeList writes for
+     * the equivalent list, without creating a MetricData for each point
+     */
+    public byte[] serialize(MetricDataBuffer metrics) throws IOException {
+        return mapper.writeValueAsBytes(metrics);
+    }
+
+    /**
+     * Writes the points of the MetricDataBuffer to the stream as an array of MetricData, then closes the stream
+     */
+    public void serialize(MetricDataBuffer metrics, OutputStream out) throws IOException {
+        mapper.writeValue(out, metrics);
+    }
+
+    /**
+     * Reads an array of MetricData and adds the definition, value and timestamp of each to the MetricDataBuffer
+     * without creating a MetricData for each
+     * @return the number of points added
+     */
+    public int deserializeInto(byte[] bytes, MetricDataBuffer result) throws IOException {
+        final int size = result.size();
+        mapper.readerForUpdating(result).readValue(bytes);
+        return result.size() - size;
+    }
+
+    /**
+     * Reads an array of MetricData from the stream into the MetricDataBuffer, then closes the stream
+     * @return the number of points added
+     * @see #deserializeInto(byte[], MetricDataBuffer)
+     */
+    public int deserializeInto(InputStream in, MetricDataBuffer result) throws IOException {
+        final int size = result.size();
+        mapper.readerForUpdating(result).readValue(in);
+        return result.size() - size;
+    }
+
+    /**
+     * Returns an iterator that reads MetricData from the stream one at a time, so that the stream never has to be
+     * held in memory. The stream may hold a JSON array of MetricData or newline-delimited JSON (NDJSON), i.e. a
+     * sequence of MetricData objects separated by whitespace. Closing the iterator closes the stream.
+     */
+    public MappingIterator<MetricData> readValues(InputStream in) throws IOException {
+        return reader.readValues(in);
+    }
+
+    /**
+     * Reads each MetricData from the stream and passes it to the consumer, then closes the stream
+     * @return the number of MetricData passed to the consumer
+     * @see #readValues(InputStream)
+     */
+    public int readValues(InputStream in, Consumer<MetricData> consumer) throws IOException {
+        int count = 0;
+        try (MappingIterator<MetricData> iterator = readValues(in)) {
+            while (iterator.hasNextValue()) {
+                consumer.accept(iterator.nextValue());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a writer that writes each MetricData to the stream as it is passed in, as newline-delimited JSON, or as
+     * a sequence of root-level values for binary formats. Closing the writer closes the stream.
+     */
+    public SequenceWriter writeValues(OutputStream out) throws IOException {
+        return sequenceWriter.writeValues(out);
+    }
+
+    /**
+     * Returns a writer that writes each MetricData to the stream as it is passed in, as the elements of a JSON array.
+     * Closing the writer ends the array and closes the stream.
+     */
+    public SequenceWriter writeValuesAsArray(OutputStream out) throws IOException {
+        return writer.writeValuesAsArray(out);
+    }
 }
@@ -16,13 +16,23 @@
 package com.expedia.metrics.jackson;
 
 import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataBuffer;
 import com.expedia.metrics.MetricDefinition;
 import com.expedia.metrics.TagCollection;
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,48 +43,349 @@ import java.util.Set;
  *     objectMapper.registerModule(new MetricsJavaModule());
  * </pre>
  *
+ * The module reads and writes MetricData, MetricDefinition and TagCollection with hand-written serializers that
+ * use the JsonGenerator and JsonParser directly instead of bean introspection. A MetricTankMetricDefinition is
+ * written with its orgId, interval, unit and mtype, and a definition with those fields is read back as a
+ * MetricTankMetricDefinition. A MetricDataBuffer is read and written as a JSON array of MetricData, and can be read
+ * into an existing buffer with ObjectMapper.readerForUpdating.
+ *
  * @author Willie Wheeler
  */
 public final class MetricsJavaModule extends SimpleModule {
     
     public MetricsJavaModule() {
-        setMixInAnnotation(MetricData.class, MetricDataMixin.class);
-        setMixInAnnotation(MetricDefinition.class, MetricDefinitionMixin.class);
-        setMixInAnnotation(TagCollection.class, TagCollectionMixin.class);
+        final TagCollectionSerializer tagCollectionSerializer = new TagCollectionSerializer();
+        final MetricDefinitionSerializer metricDefinitionSerializer = new MetricDefinitionSerializer(tagCollectionSerializer);
+        addSerializer(TagCollection.class, tagCollectionSerializer);
+        addSerializer(MetricDefinition.class, metricDefinitionSerializer);
+        final MetricDataSerializer metricDataSerializer = new MetricDataSerializer(metricDefinitionSerializer);
+        addSerializer(MetricData.class, metricDataSerializer);
+        addSerializer(MetricDataBuffer.class, new MetricDataBufferSerializer(metricDataSerializer));
+
+        final TagCollectionDeserializer tagCollectionDeserializer = new TagCollectionDeserializer();
+        final MetricDefinitionDeserializer metricDefinitionDeserializer = new MetricDefinitionDeserializer(tagCollectionDeserializer);
+        addDeserializer(TagCollection.class, tagCollectionDeserializer);
+        addDeserializer(MetricDefinition.class, metricDefinitionDeserializer);
+        final MetricDataDeserializer metricDataDeserializer = new MetricDataDeserializer(metricDefinitionDeserializer);
+        addDeserializer(MetricData.class, metricDataDeserializer);
+        addDeserializer(MetricDataBuffer.class, new MetricDataBufferDeserializer(metricDataDeserializer));
     }
-    private static class MetricDataMixin {
-        
-        @JsonCreator
-        @SuppressWarnings("PMD.UnusedFormalParameter")
-        public MetricDataMixin(
-                @JsonProperty("metricDefinition") MetricDefinition metricDefinition,
-                @JsonProperty("value") double value,
-                @JsonProperty("timestamp") long timestamp) {
+
+    private static final class MetricDataBufferSerializer extends StdSerializer<MetricDataBuffer> {
+        private final MetricDataSerializer metricDataSerializer;
+
+        private MetricDataBufferSerializer(MetricDataSerializer metricDataSerializer) {
+            super(MetricDataBuffer.class);
+            this.metricDataSerializer = metricDataSerializer;
+        }
+
+        @Override
+        public void serialize(MetricDataBuffer buffer, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray(buffer.size());
+            for (int i = 0; i < buffer.size(); i++) {
+                metricDataSerializer.serialize(buffer.getMetricDefinition(i), buffer.getValue(i), buffer.getTimestamp(i), gen, provider);
+            }
+            gen.writeEndArray();
         }
     }
-    
-    private static class MetricDefinitionMixin {
-        
-        @JsonCreator
-        @SuppressWarnings("PMD.UnusedFormalParameter")
-        public MetricDefinitionMixin(
-                @JsonProperty("tags") TagCollection tags,
-                @JsonProperty("meta") TagCollection meta) {
+
+    private static final class MetricDataSerializer extends StdSerializer<MetricData> {
+        private final MetricDefinitionSerializer metricDefinitionSerializer;
+
+        private MetricDataSerializer(MetricDefinitionSerializer metricDefinitionSerializer) {
+            super(MetricData.class);
+            this.metricDefinitionSerializer = metricDefinitionSerializer;
+        }
+
+        @Override
+        public void serialize(MetricData metricData, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            serialize(metricData.getMetricDefinition(), metricData.getValue(), metricData.getTimestamp(), gen, provider);
+        }
+
+        private void serialize(MetricDefinition metricDefinition, double value, long timestamp, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName("metricDefinition");
+            metricDefinitionSerializer.serialize(metricDefinition, gen, provider);
+            gen.writeNumberField("value", value);
+            gen.writeNumberField("timestamp", timestamp);
+            gen.writeEndObject();
         }
     }
-    
-    private static class TagCollectionMixin {
-        
-        @JsonCreator
-        @SuppressWarnings("PMD.UnusedFormalParameter")
-        public TagCollectionMixin(
-                @JsonProperty("kv") Map<String, String> kv,
-                @JsonProperty("v") Set<String> v) {
-        }
-        
-        @JsonIgnore
-        boolean isEmpty() {
-            return true;
+
+    private static final class MetricDefinitionSerializer extends StdSerializer<MetricDefinition> {
+        private final TagCollectionSerializer tagCollectionSerializer;
+
+        private MetricDefinitionSerializer(TagCollectionSerializer tagCollectionSerializer) {
+            super(MetricDefinition.class);
+            this.tagCollectionSerializer = tagCollectionSerializer;
+        }
+
+        @Override
+        public void serialize(MetricDefinition metricDefinition, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeStringField("key", metricDefinition.getKey());
+            gen.writeFieldName("tags");
+            tagCollectionSerializer.serialize(metricDefinition.getTags(), gen, provider);
+            gen.writeFieldName("meta");
+            tagCollectionSerializer.serialize(metricDefinition.getMeta(), gen, provider);
+            if (metricDefinition instanceof MetricTankMetricDefinition) {
+                final MetricTankMetricDefinition metricTankMetricDefinition = (MetricTankMetricDefinition) metricDefinition;
+                gen.writeNumberField("orgId", metricTankMetricDefinition.getOrgId());
+                gen.writeNumberField("interval", metricTankMetricDefinition.getInterval());
+                gen.writeStringField("unit", metricTankMetricDefinition.getUnit());
+                gen.writeStringField("mtype", metricTankMetricDefinition.getMtype());
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private static final class TagCollectionSerializer extends StdSerializer<TagCollection> {
+
+        private TagCollectionSerializer() {
+            super(TagCollection.class);
+        }
+
+        @Override
+        public void serialize(TagCollection tags, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName("kv");
+            gen.writeStartObject();
+            for (int i = 0; i < tags.kvSize(); i++) {
+                gen.writeStringField(tags.getKvKey(i), tags.getKvValue(i));
+            }
+            gen.writeEndObject();
+            gen.writeFieldName("v");
+            gen.writeStartArray();
+            for (int i = 0; i < tags.vSize(); i++) {
+                gen.writeString(tags.getV(i));
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private static final class MetricDataDeserializer extends StdDeserializer<MetricData> {
+        private final MetricDefinitionDeserializer metricDefinitionDeserializer;
+
+        private MetricDataDeserializer(MetricDefinitionDeserializer metricDefinitionDeserializer) {
+            super(MetricData.class);
+            this.metricDefinitionDeserializer = metricDefinitionDeserializer;
+        }
+
+        @Override
+        public MetricData deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            final MetricDataFields fields = new MetricDataFields();
+            readFields(p, ctxt, fields);
+            try {
+                return new MetricData(fields.metricDefinition, fields.value, fields.timestamp);
+            } catch (IllegalArgumentException e) {
+                return ctxt.reportInputMismatch(this, e.getMessage());
+            }
+        }
+
+        /**
+         * Reads the fields of one MetricData object into fields, resetting any that are missing
+         */
+        private void readFields(JsonParser p, DeserializationContext ctxt, MetricDataFields fields) throws IOException {
+            fields.metricDefinition = null;
+            fields.value = 0.0;
+            fields.timestamp = 0L;
+            for (String name = startObject(p, ctxt, this); name != null; name = p.nextFieldName()) {
+                p.nextToken();
+                switch (name) {
+                    case "metricDefinition":
+                        fields.metricDefinition = p.getCurrentToken() == JsonToken.VALUE_NULL
+                                ? null
+                                : metricDefinitionDeserializer.deserialize(p, ctxt);
+                        break;
+                    case "value":
+                        fields.value = _parseDoublePrimitive(p, ctxt);
+                        break;
+                    case "timestamp":
+                        fields.timestamp = _parseLongPrimitive(p, ctxt);
+                        break;
+                    default:
+                        handleUnknownProperty(p, ctxt, MetricData.class, name);
+                }
+            }
+        }
+    }
+
+    /**
+     * The fields of a MetricData object, which MetricDataBufferDeserializer reuses for every element of an array
+     */
+    private static final class MetricDataFields {
+        private MetricDefinition metricDefinition;
+        private double value;
+        private long timestamp;
+    }
+
+    /**
+     * Reads a JSON array of MetricData into the buffer without creating a MetricData for each element
+     */
+    private static final class MetricDataBufferDeserializer extends StdDeserializer<MetricDataBuffer> {
+        private final MetricDataDeserializer metricDataDeserializer;
+
+        private MetricDataBufferDeserializer(MetricDataDeserializer metricDataDeserializer) {
+            super(MetricDataBuffer.class);
+            this.metricDataDeserializer = metricDataDeserializer;
+        }
+
+        @Override
+        public MetricDataBuffer deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return deserialize(p, ctxt, new MetricDataBuffer());
+        }
+
+        @Override
+        public MetricDataBuffer deserialize(JsonParser p, DeserializationContext ctxt, MetricDataBuffer buffer) throws IOException {
+            if (!p.isExpectedStartArrayToken()) {
+                return (MetricDataBuffer) ctxt.handleUnexpectedToken(MetricDataBuffer.class, p);
+            }
+            final MetricDataFields fields = new MetricDataFields();
+            for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+                metricDataDeserializer.readFields(p, ctxt, fields);
+                try {
+                    buffer.add(fields.metricDefinition, fields.value, fields.timestamp);
+                } catch (IllegalArgumentException e) {
+                    return ctxt.reportInputMismatch(this, e.getMessage());
+                }
+            }
+            return buffer;
+        }
+    }
+
+    private static final class MetricDefinitionDeserializer extends StdDeserializer<MetricDefinition> {
+        private final TagCollectionDeserializer tagCollectionDeserializer;
+
+        private MetricDefinitionDeserializer(TagCollectionDeserializer tagCollectionDeserializer) {
+            super(MetricDefinition.class);
+            this.tagCollectionDeserializer = tagCollectionDeserializer;
+        }
+
+        @Override
+        public MetricDefinition deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String key = null;
+            TagCollection tags = TagCollection.EMPTY;
+            TagCollection meta = TagCollection.EMPTY;
+            // The Metrictank fields, which are only present for a MetricTankMetricDefinition
+            boolean metricTank = false;
+            int orgId = 0;
+            int interval = 0;
+            String unit = null;
+            String mtype = null;
+            for (String name = startObject(p, ctxt, this); name != null; name = p.nextFieldName()) {
+                final JsonToken token = p.nextToken();
+                switch (name) {
+                    case "key":
+                        key = token == JsonToken.VALUE_NULL ? null : _parseString(p, ctxt);
+                        break;
+                    case "tags":
+                        tags = token == JsonToken.VALUE_NULL ? TagCollection.EMPTY : tagCollectionDeserializer.deserialize(p, ctxt);
+                        break;
+                    case "meta":
+                        meta = token == JsonToken.VALUE_NULL ? TagCollection.EMPTY : tagCollectionDeserializer.deserialize(p, ctxt);
+                        break;
+                    case "orgId":
+                        orgId = _parseIntPrimitive(p, ctxt);
+                        metricTank = true;
+                        break;
+                    case "interval":
+                        interval = _parseIntPrimitive(p, ctxt);
+                        metricTank = true;
+                        break;
+                    case "unit":
+                        unit = token == JsonToken.VALUE_NULL ? null : _parseString(p, ctxt);
+                        metricTank = true;
+                        break;
+                    case "mtype":
+                        mtype = token == JsonToken.VALUE_NULL ? null : _parseString(p, ctxt);
+                        metricTank = true;
+                        break;
+                    default:
+                        handleUnknownProperty(p, ctxt, MetricDefinition.class, name);
+                }
+            }
+            if (!metricTank) {
+                return new MetricDefinition(key, tags, meta);
+            }
+            try {
+                return new MetricTankMetricDefinition(key, tags, meta, orgId, interval, unit, mtype);
+            } catch (IllegalArgumentException e) {
+                return ctxt.reportInputMismatch(this, e.getMessage());
+            }
+        }
+    }
+
+    private static final class TagCollectionDeserializer extends StdDeserializer<TagCollection> {
+
+        private TagCollectionDeserializer() {
+            super(TagCollection.class);
+        }
+
+        @Override
+        public TagCollection deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            Map<String, String> kv = Collections.emptyMap();
+            Set<String> v = Collections.emptySet();
+            for (String name = startObject(p, ctxt, this); name != null; name = p.nextFieldName()) {
+                final JsonToken token = p.nextToken();
+                switch (name) {
+                    case "kv":
+                        if (token != JsonToken.VALUE_NULL) {
+                            kv = readKv(p, ctxt);
+                        }
+                        break;
+                    case "v":
+                        if (token != JsonToken.VALUE_NULL) {
+                            v = readV(p, ctxt);
+                        }
+                        break;
+                    default:
+                        handleUnknownProperty(p, ctxt, TagCollection.class, name);
+                }
+            }
+            if (kv.isEmpty() && v.isEmpty()) {
+                return TagCollection.EMPTY;
+            }
+            return new TagCollection(kv, v);
+        }
+
+        private Map<String, String> readKv(JsonParser p, DeserializationContext ctxt) throws IOException {
+            final Map<String, String> kv = new HashMap<>();
+            for (String name = startObject(p, ctxt, this); name != null; name = p.nextFieldName()) {
+                final JsonToken token = p.nextToken();
+                kv.put(name, token == JsonToken.VALUE_NULL ? null : _parseString(p, ctxt));
+            }
+            return kv;
+        }
+
+        private Set<String> readV(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.getCurrentToken() != JsonToken.START_ARRAY) {
+                return ctxt.reportInputMismatch(this, "Expected an array of value tags");
+            }
+            final Set<String> v = new HashSet<>();
+            for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+                v.add(token == JsonToken.VALUE_NULL ? null : _parseString(p, ctxt));
+            }
+            return v;
+        }
+    }
+
+    /**
+     * Checks that the parser is at the start of an object, or at its first field as it is when a deserializer is
+     * called by a BeanDeserializer, and moves to the first field
+     * @return the name of the first field, or null if the object is empty
+     */
+    private static String startObject(JsonParser p, DeserializationContext ctxt, StdDeserializer<?> deserializer) throws IOException {
+        final JsonToken token = p.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return p.nextFieldName();
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            return p.getCurrentName();
+        }
+        if (token == JsonToken.END_OBJECT) {
+            return null;
         }
+        return (String) ctxt.handleUnexpectedToken(deserializer.handledType(), p);
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * MetricDataSerializer that reads and writes Smile, a binary form of JSON, with the same mappings as
+ * JacksonSerializer. By default field names and short string values, such as tag keys and values and metric names,
+ * are written once per payload and referenced when they repeat. The streaming writeValues methods write a sequence
+ * of root-level Smile values rather than newline-delimited JSON.
+ */
+public class SmileSerializer extends JacksonSerializer {
+
+    public SmileSerializer() {
+        this(newSmileFactory());
+    }
+
+    public SmileSerializer(SmileFactory factory) {
+        super(new ObjectMapper(factory));
+    }
+
+    /**
+     * @return a SmileFactory that shares repeated names and string values
+     */
+    public static SmileFactory newSmileFactory() {
+        return new SmileFactory()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+    }
+}
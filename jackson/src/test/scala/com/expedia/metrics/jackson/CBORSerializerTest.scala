@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.jackson
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition
+import com.expedia.metrics.{MetricData, MetricDefinition, TagCollection}
+import org.scalatest.{FunSpec, Matchers}
+
+import scala.collection.JavaConverters._
+
+class CBORSerializerTest extends FunSpec with Matchers {
+  private def metric(i: Int) = new MetricData(new MetricTankMetricDefinition("metric.name." + i,
+    new TagCollection(Map("host" -> "host-1", MetricDefinition.UNIT -> "P").asJava, Set("v").asJava),
+    TagCollection.EMPTY, 1, 10, "P", "gauge"), i * 0.5, 1533174724L + i)
+
+  describe("CBORSerializer") {
+    val serializer = new CBORSerializer()
+
+    it("should round trip a MetricData") {
+      val data = serializer.serialize(metric(1))
+      data.length should be < new JacksonSerializer().serialize(metric(1)).length
+      serializer.deserialize(data) should be(metric(1))
+    }
+
+    it("should round trip a list of MetricData") {
+      val metrics = (0 until 10).map(metric).asJava
+      serializer.deserializeList(serializer.serializeList(metrics)) should be(metrics)
+    }
+
+    it("should stream a sequence of MetricData") {
+      val out = new ByteArrayOutputStream()
+      val writer = serializer.writeValues(out)
+      (0 until 3).foreach(i => writer.write(metric(i)))
+      writer.close()
+
+      val iterator = serializer.readValues(new ByteArrayInputStream(out.toByteArray))
+      iterator.readAll().asScala should be((0 until 3).map(metric))
+    }
+  }
+}
@@ -15,14 +15,19 @@
  */
 package com.expedia.metrics.jackson
 
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
 import java.nio.charset.StandardCharsets
 import java.util.Collections
+import java.util.function.Consumer
 
-import com.expedia.metrics.{MetricData, MetricDefinition, TagCollection}
+import com.expedia.metrics.{MetricData, MetricDataBuffer, MetricDefinition, TagCollection}
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition
+import com.fasterxml.jackson.databind.JsonMappingException
 import org.json.{JSONArray, JSONObject}
 import org.scalatest.{FunSpec, Matchers}
 
 import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
 
 class JacksonSerializerTest extends FunSpec with Matchers {
 
@@ -80,5 +85,103 @@ class JacksonSerializerTest extends FunSpec with Matchers {
       deserialized should be(metrics)
     }
 
+    val metricTankMetric = new MetricData(new MetricTankMetricDefinition("a.b", new TagCollection(Map("host" -> "a").asJava, Set("v1", "v2").asJava), TagCollection.EMPTY, 1, 10, "P", "gauge"), 2.5, 1533174724L)
+    val metricTankMetricStr = "{\"metricDefinition\":{\"key\":\"a.b\",\"tags\":{\"kv\":{\"host\":\"a\"},\"v\":[\"v1\",\"v2\"]},\"meta\":{\"kv\":{},\"v\":[]},\"orgId\":1,\"interval\":10,\"unit\":\"P\",\"mtype\":\"gauge\"},\"value\":2.5,\"timestamp\":1533174724}"
+
+    it("should serialize a MetricData with a MetricTankMetricDefinition") {
+      val data = jacksonSerializer.serialize(metricTankMetric)
+      val serialised = new JSONObject(new String(data))
+      assert(serialised.similar(new JSONObject(metricTankMetricStr)))
+    }
+
+    it("should deserialize a MetricData with a MetricTankMetricDefinition") {
+      val deserialized = jacksonSerializer.deserialize(metricTankMetricStr.getBytes(StandardCharsets.UTF_8))
+      deserialized should be(metricTankMetric)
+      deserialized.getMetricDefinition shouldBe a[MetricTankMetricDefinition]
+    }
+
+    it("should fail to deserialize a MetricData with an unknown field") {
+      val unknownFieldStr = metricStr.replace("\"value\":", "\"unknown\":[1,{}],\"value\":")
+      a[JsonMappingException] should be thrownBy jacksonSerializer.deserialize(unknownFieldStr.getBytes(StandardCharsets.UTF_8))
+    }
+
+    it("should fail to deserialize a MetricTankMetricDefinition without a unit") {
+      val noUnitStr = metricTankMetricStr.replace("\"unit\":\"P\",", "")
+      a[JsonMappingException] should be thrownBy jacksonSerializer.deserialize(noUnitStr.getBytes(StandardCharsets.UTF_8))
+    }
+
+    it("should write MetricData as newline-delimited JSON") {
+      val out = new ByteArrayOutputStream()
+      val writer = jacksonSerializer.writeValues(out)
+      writer.write(metric)
+      writer.write(metricWithKey)
+      writer.close()
+
+      val lines = new String(out.toByteArray, StandardCharsets.UTF_8).split("\n")
+      lines should have length 2
+      assert(new JSONObject(lines(0)).similar(metricJson))
+      assert(new JSONObject(lines(1)).similar(metricWithKeyJson))
+    }
+
+    it("should write MetricData as a JSON array") {
+      val out = new ByteArrayOutputStream()
+      val writer = jacksonSerializer.writeValuesAsArray(out)
+      writer.write(metric)
+      writer.close()
+
+      assert(new JSONArray(new String(out.toByteArray, StandardCharsets.UTF_8)).similar(metricsJson))
+    }
+
+    it("should read MetricData from newline-delimited JSON and from a JSON array") {
+      val ndjson = metricStr + "\n" + metricWithKeyStr + "\n"
+      val array = "[" + metricStr + "," + metricWithKeyStr + "]"
+      Seq(ndjson, array).foreach { payload =>
+        val received = ArrayBuffer[MetricData]()
+        val count = jacksonSerializer.readValues(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), new Consumer[MetricData] {
+          override def accept(m: MetricData): Unit = received += m
+        })
+        count should be(2)
+        received should be(Seq(metric, metricWithKey))
+      }
+    }
+
+    it("should read MetricData from a stream one at a time") {
+      val iterator = jacksonSerializer.readValues(new ByteArrayInputStream((metricStr + metricWithKeyStr).getBytes(StandardCharsets.UTF_8)))
+      iterator.nextValue() should be(metric)
+      iterator.nextValue() should be(metricWithKey)
+      iterator.hasNextValue should be(false)
+      iterator.close()
+    }
+
+    it("should serialize a MetricDataBuffer as a JSON array") {
+      val buffer = new MetricDataBuffer()
+      buffer.add(metric)
+
+      assert(new JSONArray(new String(jacksonSerializer.serialize(buffer), StandardCharsets.UTF_8)).similar(metricsJson))
+
+      val out = new ByteArrayOutputStream()
+      jacksonSerializer.serialize(buffer, out)
+      assert(new JSONArray(new String(out.toByteArray, StandardCharsets.UTF_8)).similar(metricsJson))
+    }
+
+    it("should deserialize a JSON array into a MetricDataBuffer") {
+      val array = "[" + metricStr + "," + metricWithKeyStr + "]"
+      val buffer = new MetricDataBuffer()
+      buffer.add(metric)
+
+      jacksonSerializer.deserializeInto(array.getBytes(StandardCharsets.UTF_8), buffer) should be(2)
+      jacksonSerializer.deserializeInto(new ByteArrayInputStream(array.getBytes(StandardCharsets.UTF_8)), buffer) should be(2)
+
+      buffer.size should be(5)
+      buffer.getMetricData(1) should be(metric)
+      buffer.getMetricData(2) should be(metricWithKey)
+      buffer.getMetricData(4) should be(metricWithKey)
+    }
+
+    it("should fail to deserialize MetricData without a definition into a MetricDataBuffer") {
+      val noDefinitionStr = "[{\"value\":1.0,\"timestamp\":1533174724}]"
+      a[JsonMappingException] should be thrownBy jacksonSerializer.deserializeInto(noDefinitionStr.getBytes(StandardCharsets.UTF_8), new MetricDataBuffer())
+    }
+
   }
 }
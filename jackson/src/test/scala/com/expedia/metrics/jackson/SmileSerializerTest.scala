@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.jackson
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+
+import com.expedia.metrics.metrictank.MetricTankMetricDefinition
+import com.expedia.metrics.{MetricData, MetricDefinition, TagCollection}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class SmileSerializerTest extends FunSpec with Matchers with GivenWhenThen {
+  private def metric(i: Int) = new MetricData(new MetricTankMetricDefinition("metric.name." + i,
+    new TagCollection(Map("host" -> "host-1", "region" -> "us-west-2", MetricDefinition.UNIT -> "P").asJava),
+    TagCollection.EMPTY, 1, 10, "P", "gauge"), i * 0.5, 1533174724L + i)
+
+  describe("SmileSerializer") {
+    val serializer = new SmileSerializer()
+
+    it("should round trip a MetricData") {
+      val data = serializer.serialize(metric(1))
+      data.take(3) should be(":)\n".getBytes("US-ASCII"))
+      serializer.deserialize(data) should be(metric(1))
+    }
+
+    it("should write repeated names and tags once per payload") {
+      Given("a list of metrics that share their tags")
+      val metrics = (0 until 100).map(metric).asJava
+
+      When("serializing the list as Smile and as JSON")
+      val smile = serializer.serializeList(metrics)
+      val json = new JacksonSerializer().serializeList(metrics)
+
+      Then("the Smile payload is much smaller and reads back the same metrics")
+      smile.length should be < json.length / 2
+      serializer.deserializeList(smile) should be(metrics)
+    }
+
+    it("should stream a sequence of MetricData") {
+      val out = new ByteArrayOutputStream()
+      val writer = serializer.writeValues(out)
+      (0 until 3).foreach(i => writer.write(metric(i)))
+      writer.close()
+
+      val iterator = serializer.readValues(new ByteArrayInputStream(out.toByteArray))
+      iterator.readAll().asScala should be((0 until 3).map(metric))
+    }
+  }
+}
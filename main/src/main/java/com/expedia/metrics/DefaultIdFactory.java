@@ -15,8 +15,6 @@
  */
 package com.expedia.metrics;
 
-import java.util.*;
-
 /**
  * Creates ids similar to the sample ids in the Metrics 2.0 specification.
  *
@@ -32,18 +30,18 @@ public class DefaultIdFactory implements IdFactory {
             builder.append(metric.getKey())
                     .append(',');
         }
-        final SortedMap<String, String> sortedKvTags = new TreeMap<>(metric.getTags().getKv());
-        for (Map.Entry<String, String> entry : sortedKvTags.entrySet()) {
-            builder.append(entry.getKey());
-            if (entry.getValue() != null) {
-                    builder.append('=')
-                        .append(entry.getValue());
+        final TagCollection tags = metric.getTags();
+        for (int i = 0; i < tags.kvSize(); i++) {
+            builder.append(tags.getKvKey(i));
+            final String value = tags.getKvValue(i);
+            if (value != null) {
+                builder.append('=')
+                        .append(value);
             }
             builder.append(',');
         }
-        final SortedSet<String> sortedVTags = new TreeSet<>(metric.getTags().getV());
-        for (String tag : sortedVTags) {
-            builder.append(tag)
+        for (int i = 0; i < tags.vSize(); i++) {
+            builder.append(tags.getV(i))
                     .append(',');
         }
         if (builder.length() > 0) {
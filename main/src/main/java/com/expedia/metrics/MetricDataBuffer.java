@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of MetricData held as parallel arrays of definitions, values and timestamps, so that adding a
+ * point does not allocate. Call clear to reuse the buffer for the next batch. This class is not thread-safe.
+ */
+public class MetricDataBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private MetricDefinition[] definitions;
+    private double[] values;
+    private long[] timestamps;
+    private int size;
+
+    public MetricDataBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MetricDataBuffer(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity may not be negative");
+        }
+        definitions = new MetricDefinition[initialCapacity];
+        values = new double[initialCapacity];
+        timestamps = new long[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(MetricDefinition metricDefinition, double value, long timestamp) {
+        if (metricDefinition == null) {
+            throw new IllegalArgumentException("metricDefinition is required");
+        }
+        if (size == definitions.length) {
+            grow(size + 1);
+        }
+        definitions[size] = metricDefinition;
+        values[size] = value;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    public void add(MetricData metricData) {
+        add(metricData.getMetricDefinition(), metricData.getValue(), metricData.getTimestamp());
+    }
+
+    public MetricDefinition getMetricDefinition(int index) {
+        checkIndex(index);
+        return definitions[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    /**
+     * @return a new MetricData for the point at the index
+     */
+    public MetricData getMetricData(int index) {
+        checkIndex(index);
+        return new MetricData(definitions[index], values[index], timestamps[index]);
+    }
+
+    /**
+     * Ensures that the buffer can hold at least the given number of points without growing
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > definitions.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Removes every point, keeping the arrays for reuse
+     */
+    public void clear() {
+        // Release the definitions so that they can be collected
+        Arrays.fill(definitions, 0, size, null);
+        size = 0;
+    }
+
+    private void grow(int minCapacity) {
+        final int capacity = Math.max(minCapacity, definitions.length + (definitions.length >> 1) + 1);
+        definitions = Arrays.copyOf(definitions, capacity);
+        values = Arrays.copyOf(values, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
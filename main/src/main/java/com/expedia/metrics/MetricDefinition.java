@@ -76,19 +76,19 @@ public class MetricDefinition {
         if (o == null || getClass() != o.getClass()) return false;
         MetricDefinition that = (MetricDefinition) o;
         return Objects.equals(key, that.key) &&
-                Objects.equals(tags, that.tags);
+                Objects.equals(getTags(), that.getTags());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(key, tags);
+        return Objects.hash(key, getTags());
     }
 
     @Override
     public String toString() {
         return "MetricDefinition{" +
                 "key='" + key + '\'' +
-                ", tags=" + tags +
+                ", tags=" + getTags() +
                 ", meta=" + meta +
                 '}';
     }
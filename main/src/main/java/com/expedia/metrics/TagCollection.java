@@ -17,11 +17,29 @@ package com.expedia.metrics;
 
 import java.util.*;
 
+/**
+ * An immutable collection of key value tags and value tags.
+ *
+ * The tags are held in parallel arrays sorted by key (value tags are sorted by value) and the hash code is computed
+ * once on construction. The sorted tags can be read by index without allocating, e.g.
+ *
+ * <pre>
+ *     for (int i = 0; i &lt; tags.kvSize(); i++) {
+ *         use(tags.getKvKey(i), tags.getKvValue(i));
+ *     }
+ * </pre>
+ */
 public class TagCollection {
+    private static final String[] NO_TAGS = new String[0];
+    private static final Comparator<String> ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Map.Entry<String, String>> KEY_ORDER = Map.Entry.comparingByKey(ORDER);
+
     public static final TagCollection EMPTY = new TagCollection(Collections.emptyMap(), Collections.emptySet());
 
-    private final Map<String, String> kv;
-    private final Set<String> v;
+    private final String[] kvKeys;
+    private final String[] kvValues;
+    private final String[] v;
+    private final int hash;
 
     /**
      * Constructs a TagCollection with the supplied key value tags and no value tags.
@@ -38,6 +56,7 @@ public class TagCollection {
      * @param kv Map of key value tags
      * @param v Set of value tags
      */
+    @SuppressWarnings("unchecked")
     public TagCollection(Map<String, String> kv, Set<String> v) {
         if (kv == null) {
             throw new IllegalArgumentException("kv is required");
@@ -45,26 +64,104 @@ public class TagCollection {
         if (v == null) {
             throw new IllegalArgumentException("v is required");
         }
-        this.kv = Collections.unmodifiableMap(new HashMap<>(kv));
-        this.v = Collections.unmodifiableSet(new HashSet<>(v));
+        if (kv.isEmpty()) {
+            this.kvKeys = NO_TAGS;
+            this.kvValues = NO_TAGS;
+        } else {
+            final Map.Entry<String, String>[] entries = kv.entrySet().toArray(new Map.Entry[0]);
+            Arrays.sort(entries, KEY_ORDER);
+            this.kvKeys = new String[entries.length];
+            this.kvValues = new String[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                kvKeys[i] = entries[i].getKey();
+                kvValues[i] = entries[i].getValue();
+            }
+        }
+        if (v.isEmpty()) {
+            this.v = NO_TAGS;
+        } else {
+            this.v = v.toArray(new String[0]);
+            Arrays.sort(this.v, ORDER);
+        }
+        this.hash = computeHash();
+    }
+
+    /**
+     * Matches the hash code of {@code Objects.hash(getKv(), getV())}
+     */
+    private int computeHash() {
+        int kvHash = 0;
+        for (int i = 0; i < kvKeys.length; i++) {
+            kvHash += Objects.hashCode(kvKeys[i]) ^ Objects.hashCode(kvValues[i]);
+        }
+        int vHash = 0;
+        for (String tag : v) {
+            vHash += Objects.hashCode(tag);
+        }
+        return 31 * (31 + kvHash) + vHash;
     }
 
     /**
-     * @return An unmodifiable copy of this collection's key value tags
+     * @return An unmodifiable view of this collection's key value tags, iterating in key order
      */
     public Map<String, String> getKv() {
-        return kv;
+        return new KvView();
     }
 
     /**
-     * @return An unmodifiable copy of this collection's value tags
+     * @return An unmodifiable view of this collection's value tags, iterating in order
      */
     public Set<String> getV() {
-        return v;
+        return new VView();
+    }
+
+    /**
+     * @return the number of key value tags
+     */
+    public int kvSize() {
+        return kvKeys.length;
+    }
+
+    /**
+     * @param index from 0 to kvSize() - 1, in ascending key order
+     * @return the key of the key value tag at index
+     */
+    public String getKvKey(int index) {
+        return kvKeys[index];
+    }
+
+    /**
+     * @param index from 0 to kvSize() - 1, in ascending key order
+     * @return the value of the key value tag at index
+     */
+    public String getKvValue(int index) {
+        return kvValues[index];
+    }
+
+    /**
+     * @return the number of value tags
+     */
+    public int vSize() {
+        return v.length;
+    }
+
+    /**
+     * @param index from 0 to vSize() - 1, in ascending order
+     * @return the value tag at index
+     */
+    public String getV(int index) {
+        return v[index];
     }
 
     public boolean isEmpty() {
-        return kv.isEmpty() && v.isEmpty();
+        return kvKeys.length == 0 && v.length == 0;
+    }
+
+    private static int indexOf(String[] sorted, Object o) {
+        if (o != null && !(o instanceof String)) {
+            return -1;
+        }
+        return Arrays.binarySearch(sorted, (String) o, ORDER);
     }
 
     @Override
@@ -72,20 +169,90 @@ public class TagCollection {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         TagCollection that = (TagCollection) o;
-        return Objects.equals(kv, that.kv) &&
-                Objects.equals(v, that.v);
+        return hash == that.hash &&
+                Arrays.equals(kvKeys, that.kvKeys) &&
+                Arrays.equals(kvValues, that.kvValues) &&
+                Arrays.equals(v, that.v);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(kv, v);
+        return hash;
     }
 
     @Override
     public String toString() {
         return "TagCollection{" +
-                "kv=" + kv +
-                ", v=" + v +
+                "kv=" + getKv() +
+                ", v=" + getV() +
                 '}';
     }
+
+    private final class KvView extends AbstractMap<String, String> {
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < kvKeys.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<String, String> entry =
+                                    new SimpleImmutableEntry<>(kvKeys[index], kvValues[index]);
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return kvKeys.length;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return kvKeys.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(kvKeys, key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            final int index = indexOf(kvKeys, key);
+            return index >= 0 ? kvValues[index] : null;
+        }
+    }
+
+    private final class VView extends AbstractSet<String> {
+        @Override
+        public Iterator<String> iterator() {
+            return Arrays.asList(v).iterator();
+        }
+
+        @Override
+        public int size() {
+            return v.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(v, o) >= 0;
+        }
+    }
 }
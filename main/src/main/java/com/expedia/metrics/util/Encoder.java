@@ -29,4 +29,15 @@ public class Encoder {
                 .append(HEX_DIGITS[0x0F & b]);
         }
     }
+
+    /**
+     * Appends the 16 digit hex code of the big-endian bytes of value to builder.
+     * @param builder
+     * @param value
+     */
+    public static void encodeHex(StringBuilder builder, long value) {
+        for (int shift = Long.SIZE - 4; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(int) (value >>> shift) & 0x0F]);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics
+
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+class MetricDataBufferTest extends FunSpec with Matchers with GivenWhenThen {
+  describe("a MetricDataBuffer") {
+    it("should grow past its initial capacity and keep points in order") {
+      Given("a buffer with a capacity of one")
+      val buffer = new MetricDataBuffer(1)
+      val metricDefinition = new MetricDefinition("a.b", TagCollection.EMPTY, TagCollection.EMPTY)
+
+      When("adding three points")
+      buffer.add(metricDefinition, 1.0, 100)
+      buffer.add(new MetricData(metricDefinition, 2.0, 200))
+      buffer.add(metricDefinition, 3.0, 300)
+
+      Then("every point can be read back")
+      buffer.size should be(3)
+      buffer.getValue(1) should be(2.0)
+      buffer.getTimestamp(2) should be(300)
+      buffer.getMetricData(0) should be(new MetricData(metricDefinition, 1.0, 100))
+    }
+
+    it("should be empty after being cleared") {
+      Given("a buffer holding a point")
+      val buffer = new MetricDataBuffer()
+      buffer.add(new MetricDefinition("a.b", TagCollection.EMPTY, TagCollection.EMPTY), 1.0, 100)
+
+      When("clearing the buffer")
+      buffer.clear()
+
+      Then("the buffer is empty and its points can't be read")
+      buffer.isEmpty should be(true)
+      an[IndexOutOfBoundsException] should be thrownBy buffer.getMetricDefinition(0)
+    }
+  }
+}
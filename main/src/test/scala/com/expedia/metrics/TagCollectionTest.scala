@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics
+
+import java.util.Objects
+
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class TagCollectionTest extends FunSpec with Matchers with GivenWhenThen {
+  describe("a TagCollection") {
+    val kv = Map("unit" -> "P", "mtype" -> "gauge", "a.b" -> "c").asJava
+    val v = Set("valuetag", "another").asJava
+    val tags = new TagCollection(kv, v)
+
+    it("should iterate key value tags in key order") {
+      val keys = (0 until tags.kvSize).map(i => tags.getKvKey(i))
+      val values = (0 until tags.kvSize).map(i => tags.getKvValue(i))
+      keys should be(Seq("a.b", "mtype", "unit"))
+      values should be(Seq("c", "gauge", "P"))
+      tags.getKv.keySet.asScala.toSeq should be(Seq("a.b", "mtype", "unit"))
+    }
+
+    it("should iterate value tags in order") {
+      (0 until tags.vSize).map(i => tags.getV(i)) should be(Seq("another", "valuetag"))
+    }
+
+    it("should expose views equal to the supplied collections") {
+      tags.getKv should equal(kv)
+      tags.getV() should equal(v)
+      tags.getKv.get("mtype") should be("gauge")
+      tags.getKv.get("missing") should be(null)
+      tags.getV().contains("valuetag") should be(true)
+    }
+
+    it("should not be modifiable") {
+      intercept[UnsupportedOperationException] {
+        tags.getKv.put("key", "value")
+      }
+      intercept[UnsupportedOperationException] {
+        tags.getV().add("value")
+      }
+    }
+
+    it("should be equal regardless of the order tags were supplied in") {
+      val sorted = new TagCollection(new java.util.TreeMap(kv), new java.util.TreeSet(v))
+      sorted should equal(tags)
+      sorted.hashCode should equal(tags.hashCode)
+      tags.hashCode should equal(Objects.hash(new java.util.HashMap[String, String](kv), new java.util.HashSet[String](v)))
+      new TagCollection(kv) should not equal tags
+    }
+
+    it("should be empty when it has no tags") {
+      TagCollection.EMPTY.isEmpty should be(true)
+      TagCollection.EMPTY.kvSize should be(0)
+      tags.isEmpty should be(false)
+    }
+  }
+}
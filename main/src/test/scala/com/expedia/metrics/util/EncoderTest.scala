@@ -28,5 +28,13 @@ class EncoderTest extends FunSpec with Matchers with GivenWhenThen {
     Encoder.encodeHex(result, bytes)
     Then("generate hex code")
     result.toString should equal("0a02")
+
+    Given("a long")
+    val value = 0x0a02000000000fffL
+    When("encoding the long to hex")
+    val longResult = new java.lang.StringBuilder
+    Encoder.encodeHex(longResult, value)
+    Then("generate zero padded hex code")
+    longResult.toString should equal("0a02000000000fff")
   }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricDefinition;
+import com.google.common.cache.Cache;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Adapts a Guava Cache to a MetricDefinitionCache
+ */
+final class GuavaMetricDefinitionCache implements MetricDefinitionCache {
+    private final Cache<MetricKey, MetricDefinition> cache;
+
+    GuavaMetricDefinitionCache(Cache<MetricKey, MetricDefinition> cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache is required");
+        }
+        this.cache = cache;
+    }
+
+    @Override
+    public MetricDefinition get(int orgId, long idHigh, long idLow) {
+        return cache.getIfPresent(new MetricKey(orgId, idHigh, idLow));
+    }
+
+    @Override
+    public MetricDefinition get(MetricKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(MetricKey key, MetricDefinition definition) {
+        cache.put(key, definition);
+    }
+
+    @Override
+    public void forEach(BiConsumer<MetricKey, MetricDefinition> action) {
+        cache.asMap().forEach(action);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.TagCollection;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This deserializer reads the JSON form of the Metrictank MetricData, as found in Kafka-mdm MetricDataArrayJson
+ * messages. It uses the Jackson streaming parser, so MetricData are read token by token without building a tree,
+ * and the MetricData of an array are read one at a time.
+ *
+ * @see <a href="https://github.com/grafana/metrictank/blob/master/docs/inputs.md#metricdata">MetricData</a>
+ */
+public class JsonMetricDataDeserializer {
+    private final JsonFactory jsonFactory;
+
+    public JsonMetricDataDeserializer() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param jsonFactory the factory for parsers, which may be shared with other code
+     */
+    public JsonMetricDataDeserializer(JsonFactory jsonFactory) {
+        if (jsonFactory == null) {
+            throw new IllegalArgumentException("jsonFactory is required");
+        }
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Deserializes a MetricData object from the buffer's position up to its limit
+     */
+    public MetricData deserialize(ByteBuffer buffer) throws IOException {
+        try (JsonParser parser = createParser(buffer)) {
+            parser.nextToken();
+            return deserialize(parser);
+        }
+    }
+
+    /**
+     * Reads the MetricData object at the parser's current token, leaving the parser at the end of the object
+     */
+    public MetricData deserialize(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a MetricData object but found " + parser.getCurrentToken());
+        }
+        int orgId = 0;
+        String name = "";
+        int interval = 0;
+        double value = 0.0;
+        String unit = "";
+        long timestamp = 0L;
+        String mtype = "";
+        TagCollection tags = TagCollection.EMPTY;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "org_id":
+                    orgId = parser.getIntValue();
+                    break;
+                case "name":
+                    name = parser.getText();
+                    break;
+                case "interval":
+                    interval = parser.getIntValue();
+                    break;
+                case "value":
+                    value = parser.getDoubleValue();
+                    break;
+                case "unit":
+                    unit = parser.getText();
+                    break;
+                case "time":
+                    timestamp = parser.getLongValue();
+                    break;
+                case "mtype":
+                    mtype = parser.getText();
+                    break;
+                case "tags":
+                    tags = readTags(parser);
+                    break;
+                default:
+                    // The id is derived from the other fields, and unknown fields are discarded
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+            throw new IOException("Unterminated MetricData object");
+        }
+
+        throwIfMissing("org_id", orgId == 0);
+        throwIfMissing("name", name.isEmpty());
+        throwIfMissing("interval", interval == 0);
+        throwIfMissing("mtype", mtype.isEmpty());
+
+        final MetricTankMetricDefinition definition = new MetricTankMetricDefinition(name, tags, TagCollection.EMPTY, orgId, interval, unit, mtype);
+        return new MetricData(definition, value, timestamp);
+    }
+
+    /**
+     * Returns a reader that deserializes the MetricData of a JSON array from the buffer's position as they are read
+     */
+    public MetricDataArray deserializeArray(ByteBuffer buffer) throws IOException {
+        final JsonParser parser = createParser(buffer);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Expected an array of MetricData");
+        }
+        return new JsonMetricDataArray(this, parser);
+    }
+
+    private JsonParser createParser(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            return jsonFactory.createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return jsonFactory.createParser(bytes);
+    }
+
+    private static TagCollection readTags(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return TagCollection.EMPTY;
+        }
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected an array of tags but found " + parser.getCurrentToken());
+        }
+        final Map<String, String> kvTags = new HashMap<>();
+        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+            MessagePackSerializer.putTag(kvTags, parser.getText());
+        }
+        if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+            throw new IOException("Expected a tag string but found " + parser.getCurrentToken());
+        }
+        return new TagCollection(kvTags);
+    }
+
+    private static void throwIfMissing(String fieldName, boolean isMissing) throws IOException {
+        if (isMissing) {
+            throw new IOException("Missing required field: "+fieldName);
+        }
+    }
+
+    /**
+     * Reads the MetricData of a JSON array, whose size is only known once its end is reached
+     */
+    private static final class JsonMetricDataArray extends MetricDataArray {
+        private final JsonMetricDataDeserializer deserializer;
+        private final JsonParser parser;
+        // True when the parser is at the token after the last MetricData read
+        private boolean advanced;
+        private boolean ended;
+
+        JsonMetricDataArray(JsonMetricDataDeserializer deserializer, JsonParser parser) {
+            this.deserializer = deserializer;
+            this.parser = parser;
+        }
+
+        @Override
+        public int size() {
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (!advanced && !ended) {
+                final JsonToken token = parser.nextToken();
+                if (token != JsonToken.START_OBJECT && token != JsonToken.END_ARRAY) {
+                    throw new IOException("Expected a MetricData object but found " + token);
+                }
+                advanced = true;
+                if (token == JsonToken.END_ARRAY) {
+                    ended = true;
+                    parser.close();
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public MetricData next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+            return deserializer.deserialize(parser);
+        }
+    }
+}
@@ -1,20 +1,43 @@
 package com.expedia.metrics.metrictank;
 
 import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataBuffer;
 import com.expedia.metrics.MetricDefinition;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+/**
+ * Deserializer that reads data from Metrictank Kafka-mdm and maps MetricPoints to the definitions of MetricData seen
+ * earlier.
+ * <p>
+ * An MDMCachingDeserializer is thread-safe as long as its cache is, so one instance and one cache can be shared by
+ * every consumer thread; a StripedMetricDefinitionCache keeps those threads from contending on a single lock. Within
+ * a thread, and within a batch, buffers are applied in order. Across threads there is no ordering, so a MetricPoint
+ * may miss the definition that another thread is caching at the same moment. Producers key Kafka-mdm messages by
+ * series, so assigning each partition to one thread keeps every series on one thread and in order.
+ */
 public class MDMCachingDeserializer {
     private static final Duration DEFAULT_V2_CLEAR_INTERVAL = Duration.ofHours(1);
+    // Splitting a batch into a few tasks per thread evens out records of different sizes without a task per record
+    private static final int TASKS_PER_THREAD = 4;
 
-    private final Cache<MetricKey, MetricDefinition> cache;
+    private final MetricDefinitionCache cache;
     private final MDMDeserializer deserializer;
     private final MetricTankIdFactory idFactory;
+    private final PendingMetricPoints pendingMetricPoints;
 
     /**
      * Constructs an MDMCachingDeserializer with a default cache
@@ -31,9 +54,41 @@ public class MDMCachingDeserializer {
      * https://github.com/raintank/tsdb-gw/blob/a6a58c47a16723a36b9ac96b462cf61f79f1e205/scripts/config/tsdb-gw.ini#L38
      */
     public MDMCachingDeserializer(Cache<MetricKey, MetricDefinition> cache) {
+        this(new GuavaMetricDefinitionCache(cache));
+    }
+
+    /**
+     * Constructs an MDMCachingDeserializer that uses the supplied cache, e.g. a PrimitiveMetricDefinitionCache for
+     * millions of series or a StripedMetricDefinitionCache shared by many threads. As with a Guava cache, entries
+     * should expire slightly after the tsdb-gw v2-clear-interval.
+     */
+    public MDMCachingDeserializer(MetricDefinitionCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * Constructs an MDMCachingDeserializer that parks MetricPoints of unknown series in pendingMetricPoints until
+     * the definition of their series arrives. Parked points are only released by deserialize(ByteBuffer, Consumer).
+     */
+    public MDMCachingDeserializer(MetricDefinitionCache cache, PendingMetricPoints pendingMetricPoints) {
+        this(cache, pendingMetricPoints, MDMDeserializer.DEFAULT_ORG_ID);
+    }
+
+    /**
+     * Constructs an MDMCachingDeserializer that gives MetricPointWithoutOrg messages the supplied org id
+     * @param pendingMetricPoints where MetricPoints of unknown series are parked, or null to drop them
+     */
+    public MDMCachingDeserializer(MetricDefinitionCache cache, PendingMetricPoints pendingMetricPoints, int orgId) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache is required");
+        }
         this.cache = cache;
-        deserializer = new MDMDeserializer();
+        // Reading the cache means MetricData for a known series reuse the cached definition instead of decoding it.
+        // Only this class writes to the cache, once per MetricData, and batches decoded in parallel leave that to
+        // their ordered phase.
+        deserializer = new MDMDeserializer(new ReadOnlyMetricDefinitionCache(cache), orgId);
         idFactory = new MetricTankIdFactory();
+        this.pendingMetricPoints = pendingMetricPoints;
     }
 
     /**
@@ -48,13 +103,232 @@ public class MDMCachingDeserializer {
             return metricData;
         } else if (mdmData.isMetricPoint()) {
             MetricPoint metricPoint = mdmData.getMetricPoint();
-            MetricDefinition metricDefinition = cache.getIfPresent(metricPoint.getKey());
+            MetricDefinition metricDefinition = cache.get(metricPoint.getKey());
             if (metricDefinition == null) {
                 return null;
             }
             return new MetricData(metricDefinition, metricPoint.getValue(), metricPoint.getTime());
+        } else if (mdmData.isMetricDataArray()) {
+            throw new IOException("MetricDataArray messages hold many MetricData, use deserialize(ByteBuffer, Consumer)");
+        }
+
+        throw new IOException("Unknown MDMData type: "+mdmData);
+    }
+
+    /**
+     * Writes the cached definitions to a snapshot file, e.g. periodically and on shutdown
+     * @return the number of definitions written
+     * @see MetricDefinitionSnapshot#write(MetricDefinitionCache, Path)
+     */
+    public int writeSnapshot(Path file) throws IOException {
+        return new MetricDefinitionSnapshot().write(cache, file);
+    }
+
+    /**
+     * Loads the definitions in a snapshot file into the cache, e.g. on startup
+     * @return the number of definitions loaded
+     * @see MetricDefinitionSnapshot#load(Path, MetricDefinitionCache)
+     */
+    public int loadSnapshot(Path file) throws IOException {
+        return new MetricDefinitionSnapshot().load(file, cache);
+    }
+
+    /**
+     * Deserializes the buffer and passes the resulting MetricData to the consumer. A MetricPoint of an unknown series
+     * is parked if this deserializer has PendingMetricPoints, and is otherwise dropped. When a MetricData arrives,
+     * the parked points of its series are passed to the consumer before the MetricData itself. The MetricData of a
+     * MetricDataArrayMsgp or MetricDataArrayJson message are decoded and passed to the consumer one at a time.
+     * @return the number of MetricData passed to the consumer
+     * @throws IOException when the buffer can't be deserialized
+     */
+    public int deserialize(ByteBuffer buffer, Consumer<MetricData> consumer) throws IOException {
+        MDMData mdmData = deserializer.deserialize(buffer);
+        if (mdmData.isMetricData()) {
+            return accept(mdmData.getMetricData(), consumer);
+        } else if (mdmData.isMetricDataArray()) {
+            MetricDataArray metricDataArray = mdmData.getMetricDataArray();
+            int count = 0;
+            while (metricDataArray.hasNext()) {
+                count += accept(metricDataArray.next(), consumer);
+            }
+            return count;
+        } else if (mdmData.isMetricPoint()) {
+            MetricPoint metricPoint = mdmData.getMetricPoint();
+            MetricDefinition metricDefinition = cache.get(metricPoint.getKey());
+            if (metricDefinition == null) {
+                if (pendingMetricPoints != null) {
+                    pendingMetricPoints.park(metricPoint);
+                }
+                return 0;
+            }
+            consumer.accept(new MetricData(metricDefinition, metricPoint.getValue(), metricPoint.getTime()));
+            return 1;
         }
 
         throw new IOException("Unknown MDMData type: "+mdmData);
     }
+
+    /**
+     * Deserializes a batch of buffers, e.g. the records of a Kafka poll, using the common ForkJoinPool
+     * @see #deserialize(List, MetricDataBuffer, Executor)
+     */
+    public int deserialize(List<ByteBuffer> buffers, MetricDataBuffer result) throws IOException {
+        return deserialize(buffers, result, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Deserializes a batch of buffers, e.g. the records of a Kafka poll, and adds the resulting MetricData to the
+     * result. The buffers are decoded in parallel on the executor, then the cache is updated and MetricPoints are
+     * resolved on the calling thread in the order of the buffers, so that the result is the same as calling
+     * deserialize(ByteBuffer, Consumer) for each buffer in turn. In particular a MetricPoint that follows the
+     * MetricData of its series in the batch is resolved.
+     * @return the number of MetricData added to the result
+     * @throws IOException when a buffer can't be deserialized, in which case nothing is added to the result and the
+     * cache is not updated
+     */
+    public int deserialize(List<ByteBuffer> buffers, MetricDataBuffer result, Executor executor) throws IOException {
+        final int count = buffers.size();
+        if (count == 0) {
+            return 0;
+        }
+        final DecodedRecord[] records = new DecodedRecord[count];
+        final int tasks = Math.min(count, Runtime.getRuntime().availableProcessors() * TASKS_PER_THREAD);
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+        for (int task = 0; task < tasks; task++) {
+            final int from = (int) ((long) count * task / tasks);
+            final int to = (int) ((long) count * (task + 1) / tasks);
+            futures[task] = CompletableFuture.runAsync(() -> decode(buffers, records, from, to), executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        for (DecodedRecord record : records) {
+            if (record.error != null) {
+                throw record.error;
+            }
+        }
+
+        result.ensureCapacity(result.size() + count);
+        int added = 0;
+        for (DecodedRecord record : records) {
+            if (record.metricDataList != null) {
+                for (int i = 0; i < record.metricDataList.size(); i++) {
+                    added += accept(record.metricDataList.get(i), record.keys[i], result::add);
+                }
+            } else if (record.mdmData.isMetricData()) {
+                added += accept(record.mdmData.getMetricData(), record.keys[0], result::add);
+            } else {
+                MetricPoint metricPoint = record.mdmData.getMetricPoint();
+                MetricDefinition metricDefinition = cache.get(metricPoint.getKey());
+                if (metricDefinition == null) {
+                    if (pendingMetricPoints != null) {
+                        pendingMetricPoints.park(metricPoint);
+                    }
+                } else {
+                    result.add(metricDefinition, metricPoint.getValue(), metricPoint.getTime());
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Decodes buffers from (inclusive) to to (exclusive) and computes the key of each MetricData, which formats its
+     * tags and digests them, without writing to the cache. Any failure is captured in the record so that the batch
+     * can fail in the order of the buffers.
+     */
+    private void decode(List<ByteBuffer> buffers, DecodedRecord[] records, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final DecodedRecord record = new DecodedRecord();
+            try {
+                final MDMData mdmData = deserializer.deserialize(buffers.get(i));
+                if (mdmData.isMetricDataArray()) {
+                    final MetricDataArray metricDataArray = mdmData.getMetricDataArray();
+                    record.metricDataList = new ArrayList<>(Math.max(metricDataArray.size(), 0));
+                    while (metricDataArray.hasNext()) {
+                        record.metricDataList.add(metricDataArray.next());
+                    }
+                    record.keys = new MetricKey[record.metricDataList.size()];
+                    for (int j = 0; j < record.keys.length; j++) {
+                        record.keys[j] = idFactory.getKey(record.metricDataList.get(j).getMetricDefinition());
+                    }
+                } else if (mdmData.isMetricData()) {
+                    record.mdmData = mdmData;
+                    record.keys = new MetricKey[] { idFactory.getKey(mdmData.getMetricData().getMetricDefinition()) };
+                } else if (mdmData.isMetricPoint()) {
+                    record.mdmData = mdmData;
+                } else {
+                    throw new IOException("Unknown MDMData type: "+mdmData);
+                }
+            } catch (IOException e) {
+                record.error = e;
+            } catch (IllegalArgumentException e) {
+                record.error = new IOException("Unable to compute the key of MetricData", e);
+            }
+            records[i] = record;
+        }
+    }
+
+    /**
+     * Caches the definition of the MetricData, then passes any parked points of its series and the MetricData itself
+     * to the consumer
+     */
+    private int accept(MetricData metricData, Consumer<MetricData> consumer) {
+        return accept(metricData, idFactory.getKey(metricData.getMetricDefinition()), consumer);
+    }
+
+    /**
+     * @param key the key of the MetricData's definition
+     */
+    private int accept(MetricData metricData, MetricKey key, Consumer<MetricData> consumer) {
+        MetricDefinition metricDefinition = metricData.getMetricDefinition();
+        cache.put(key, metricDefinition);
+        int released = pendingMetricPoints == null ? 0 : pendingMetricPoints.release(key, metricDefinition, consumer);
+        consumer.accept(metricData);
+        return released + 1;
+    }
+
+    /**
+     * The outcome of decoding one buffer of a batch: an MDMData holding a MetricData or MetricPoint, the MetricData
+     * of a MetricDataArray message, or the reason the buffer couldn't be decoded. Keys holds the key of each
+     * MetricData.
+     */
+    private static final class DecodedRecord {
+        private MDMData mdmData;
+        private List<MetricData> metricDataList;
+        private MetricKey[] keys;
+        private IOException error;
+    }
+
+    /**
+     * A view of a cache that ignores puts
+     */
+    private static final class ReadOnlyMetricDefinitionCache implements MetricDefinitionCache {
+        private final MetricDefinitionCache cache;
+
+        private ReadOnlyMetricDefinitionCache(MetricDefinitionCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public MetricDefinition get(int orgId, long idHigh, long idLow) {
+            return cache.get(orgId, idHigh, idLow);
+        }
+
+        @Override
+        public void put(MetricKey key, MetricDefinition definition) {
+            // MDMCachingDeserializer caches each definition itself
+        }
+
+        @Override
+        public void forEach(BiConsumer<MetricKey, MetricDefinition> action) {
+            cache.forEach(action);
+        }
+    }
 }
@@ -8,15 +8,24 @@ import com.expedia.metrics.MetricData;
 public class MDMData {
     private final MetricPoint metricPoint;
     private final MetricData metricData;
+    private final MetricDataArray metricDataArray;
 
     MDMData(MetricPoint metricPoint) {
         this.metricPoint = metricPoint;
         this.metricData = null;
+        this.metricDataArray = null;
     }
 
     MDMData(MetricData metricData) {
         this.metricPoint = null;
         this.metricData = metricData;
+        this.metricDataArray = null;
+    }
+
+    MDMData(MetricDataArray metricDataArray) {
+        this.metricPoint = null;
+        this.metricData = null;
+        this.metricDataArray = metricDataArray;
     }
 
     public MetricPoint getMetricPoint() {
@@ -27,6 +36,14 @@ public class MDMData {
         return metricData;
     }
 
+    /**
+     * @return a reader over the MetricData of a MetricDataArrayMsgp or MetricDataArrayJson message, which decodes them
+     * as they are read
+     */
+    public MetricDataArray getMetricDataArray() {
+        return metricDataArray;
+    }
+
     public boolean isMetricPoint() {
         return metricPoint != null;
     }
@@ -34,4 +51,8 @@ public class MDMData {
     public boolean isMetricData() {
         return metricData != null;
     }
+
+    public boolean isMetricDataArray() {
+        return metricDataArray != null;
+    }
 }
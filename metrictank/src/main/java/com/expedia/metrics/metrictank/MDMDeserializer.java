@@ -15,6 +15,9 @@
  */
 package com.expedia.metrics.metrictank;
 
+import com.expedia.metrics.MetricDefinition;
+import com.google.common.cache.Cache;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -22,25 +25,67 @@ import java.nio.ByteBuffer;
  * Deserializer that reads data from Metrictank Kafka-mdm
  */
 public class MDMDeserializer {
+    // Matches the default org id of MessagePackSerializer
+    static final int DEFAULT_ORG_ID = 1;
+
     private final MetricPointSerializer metricPointSerializer;
     private final MessagePackSerializer messagePackSerializer;
+    private final JsonMetricDataDeserializer jsonMetricDataDeserializer;
+    private final int orgId;
 
     public MDMDeserializer() {
-        metricPointSerializer = new MetricPointSerializer();
-        messagePackSerializer = new MessagePackSerializer();
+        this(new MessagePackSerializer(), DEFAULT_ORG_ID);
+    }
+
+    /**
+     * Constructs an MDMDeserializer that gives MetricPointWithoutOrg messages the supplied org id
+     */
+    public MDMDeserializer(int orgId) {
+        this(new MessagePackSerializer(), orgId);
+    }
+
+    /**
+     * Constructs an MDMDeserializer that reuses the definitions of MetricData for series it has already seen
+     * @see MessagePackSerializer#MessagePackSerializer(Cache)
+     */
+    public MDMDeserializer(Cache<MetricKey, MetricDefinition> definitionCache) {
+        this(new MessagePackSerializer(definitionCache), DEFAULT_ORG_ID);
+    }
+
+    /**
+     * Constructs an MDMDeserializer that reuses the definitions of MetricData for series it has already seen
+     * @see MessagePackSerializer#MessagePackSerializer(MetricDefinitionCache)
+     */
+    public MDMDeserializer(MetricDefinitionCache definitionCache) {
+        this(new MessagePackSerializer(definitionCache), DEFAULT_ORG_ID);
+    }
+
+    /**
+     * Constructs an MDMDeserializer that reuses the definitions of MetricData for series it has already seen and gives
+     * MetricPointWithoutOrg messages the supplied org id
+     */
+    public MDMDeserializer(MetricDefinitionCache definitionCache, int orgId) {
+        this(new MessagePackSerializer(definitionCache), orgId);
+    }
+
+    private MDMDeserializer(MessagePackSerializer messagePackSerializer, int orgId) {
+        this.metricPointSerializer = new MetricPointSerializer();
+        this.messagePackSerializer = messagePackSerializer;
+        this.jsonMetricDataDeserializer = new JsonMetricDataDeserializer();
+        this.orgId = orgId;
     }
 
     public MDMData deserialize(ByteBuffer buffer) throws IOException {
         byte format = buffer.get();
         switch (format) {
             case 0:
-                throw new IOException("MetricDataArrayJson is not supported");
+                return new MDMData(jsonMetricDataDeserializer.deserializeArray(buffer));
             case 1:
-                throw new IOException("MetricDataArrayMsgp is not supported");
+                return new MDMData(messagePackSerializer.deserializeArray(buffer));
             case 2:
                 return new MDMData(metricPointSerializer.deserialize(buffer));
             case 3:
-                throw new IOException("MetricPointWithoutOrg is not supported");
+                return new MDMData(metricPointSerializer.deserializeWithoutOrg(buffer, orgId));
             default:
                 buffer.position(buffer.position()-1);
                 return new MDMData(messagePackSerializer.deserialize(buffer));
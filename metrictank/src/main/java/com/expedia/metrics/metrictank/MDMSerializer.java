@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDefinition;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Serializer that writes data for Metrictank Kafka-mdm using the v2 scheme: the first MetricData of a series is sent
+ * in full, and later MetricData of the series are sent as MetricPoint messages of 33 bytes, or 29 bytes without the
+ * org id, until the resend interval has passed, when the full MetricData is sent again. This is the counterpart of
+ * MDMCachingDeserializer.
+ * <p>
+ * Consumers can only resolve a MetricPoint after they have seen the full MetricData, so messages of a series should
+ * be sent in order, e.g. to the same partition, and the resend interval should not exceed the v2-clear-interval of
+ * the consumers. If a message may not have been delivered, call reset so that every series is sent in full again.
+ */
+public class MDMSerializer {
+    private static final Duration DEFAULT_V2_CLEAR_INTERVAL = Duration.ofHours(1);
+    private static final byte METRIC_DATA_ARRAY_FORMAT = 1;
+    private static final byte METRIC_POINT_FORMAT = 2;
+    private static final byte METRIC_POINT_WITHOUT_ORG_FORMAT = 3;
+    private static final int METRIC_POINT_MESSAGE_BYTES = 1 + MetricPointSerializer.METRIC_POINT_BYTES;
+    private static final int METRIC_POINT_WITHOUT_ORG_MESSAGE_BYTES = 1 + MetricPointSerializer.METRIC_POINT_WITHOUT_ORG_BYTES;
+
+    private final MessagePackSerializer messagePackSerializer = new MessagePackSerializer();
+    private final MetricPointSerializer metricPointSerializer = new MetricPointSerializer();
+    private final MetricTankIdFactory idFactory = new MetricTankIdFactory();
+    private final Cache<MetricKey, Boolean> sentSeries;
+    private final boolean writeWithoutOrg;
+    private final int orgId;
+
+    /**
+     * Constructs an MDMSerializer that resends each definition every hour, matching the default tsdb-gw
+     * v2-clear-interval
+     */
+    public MDMSerializer() {
+        this(DEFAULT_V2_CLEAR_INTERVAL);
+    }
+
+    public MDMSerializer(Duration resendInterval) {
+        this(CacheBuilder.newBuilder()
+                .expireAfterWrite(resendInterval)
+                .build());
+    }
+
+    /**
+     * Constructs an MDMSerializer that writes the MetricPoints of series in the supplied org as MetricPointWithoutOrg
+     * messages, for consumers that are configured with that org id
+     */
+    public MDMSerializer(Duration resendInterval, int orgId) {
+        this(CacheBuilder.newBuilder()
+                .expireAfterWrite(resendInterval)
+                .build(), orgId);
+    }
+
+    /**
+     * Constructs an MDMSerializer that tracks the series it has sent in full in the supplied cache. A series is sent
+     * in full again once it leaves the cache, so the cache should use expireAfterWrite with the resend interval, and
+     * may be bounded with maximumSize.
+     */
+    public MDMSerializer(Cache<MetricKey, Boolean> sentSeries) {
+        this(sentSeries, false, 0);
+    }
+
+    /**
+     * Constructs an MDMSerializer that tracks the series it has sent in full in the supplied cache, and writes the
+     * MetricPoints of series in the supplied org as MetricPointWithoutOrg messages
+     */
+    public MDMSerializer(Cache<MetricKey, Boolean> sentSeries, int orgId) {
+        this(sentSeries, true, orgId);
+    }
+
+    private MDMSerializer(Cache<MetricKey, Boolean> sentSeries, boolean writeWithoutOrg, int orgId) {
+        if (sentSeries == null) {
+            throw new IllegalArgumentException("sentSeries is required");
+        }
+        this.sentSeries = sentSeries;
+        this.writeWithoutOrg = writeWithoutOrg;
+        this.orgId = orgId;
+    }
+
+    public byte[] serialize(MetricData metric) throws IOException {
+        final MetricKey key = idFactory.getKey(metric.getMetricDefinition());
+        if (sentSeries.getIfPresent(key) == null) {
+            final byte[] bytes = messagePackSerializer.serialize(metric);
+            sentSeries.put(key, Boolean.TRUE);
+            return bytes;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(metricPointMessageBytes(key));
+        writeMetricPoint(key, metric, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the message for the MetricData at the buffer's position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serialize(MetricData metric, ByteBuffer buffer) throws IOException {
+        final MetricKey key = idFactory.getKey(metric.getMetricDefinition());
+        if (sentSeries.getIfPresent(key) == null) {
+            final int length = messagePackSerializer.serialize(metric, buffer);
+            sentSeries.put(key, Boolean.TRUE);
+            return length;
+        }
+        final int length = metricPointMessageBytes(key);
+        if (buffer.remaining() < length) {
+            throw new IOException("Insufficient capacity to hold a MetricPoint message");
+        }
+        writeMetricPoint(key, metric, buffer);
+        return length;
+    }
+
+    /**
+     * Serializes the list as a MetricDataArrayMsgp message, which sends every definition in full
+     */
+    public byte[] serializeList(List<MetricData> metrics) throws IOException {
+        final byte[] array = messagePackSerializer.serializeList(metrics);
+        final byte[] bytes = new byte[1 + array.length];
+        bytes[0] = METRIC_DATA_ARRAY_FORMAT;
+        System.arraycopy(array, 0, bytes, 1, array.length);
+        markSent(metrics);
+        return bytes;
+    }
+
+    /**
+     * Writes the list as a MetricDataArrayMsgp message at the buffer's position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serializeList(List<MetricData> metrics, ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Insufficient capacity to hold a MetricDataArrayMsgp message");
+        }
+        final int position = buffer.position();
+        buffer.put(METRIC_DATA_ARRAY_FORMAT);
+        final int length;
+        try {
+            length = messagePackSerializer.serializeList(metrics, buffer);
+        } catch (IOException e) {
+            buffer.position(position);
+            throw e;
+        }
+        markSent(metrics);
+        return 1 + length;
+    }
+
+    /**
+     * @return true if the next MetricData of the series will be sent as a MetricPoint
+     */
+    public boolean isSent(MetricDefinition metricDefinition) {
+        return sentSeries.getIfPresent(idFactory.getKey(metricDefinition)) != null;
+    }
+
+    /**
+     * Forgets which series have been sent, so that the next MetricData of every series is sent in full
+     */
+    public void reset() {
+        sentSeries.invalidateAll();
+    }
+
+    private void markSent(List<MetricData> metrics) {
+        for (final MetricData metric : metrics) {
+            sentSeries.put(idFactory.getKey(metric.getMetricDefinition()), Boolean.TRUE);
+        }
+    }
+
+    private boolean isWithoutOrg(MetricKey key) {
+        return writeWithoutOrg && key.getOrgId() == orgId;
+    }
+
+    private int metricPointMessageBytes(MetricKey key) {
+        return isWithoutOrg(key) ? METRIC_POINT_WITHOUT_ORG_MESSAGE_BYTES : METRIC_POINT_MESSAGE_BYTES;
+    }
+
+    private void writeMetricPoint(MetricKey key, MetricData metric, ByteBuffer buffer) throws IOException {
+        final ByteOrder order = buffer.order();
+        final MetricPoint metricPoint = new MetricPoint(key, metric.getValue(), metric.getTimestamp());
+        if (isWithoutOrg(key)) {
+            buffer.put(METRIC_POINT_WITHOUT_ORG_FORMAT);
+            metricPointSerializer.serializeWithoutOrg(metricPoint, buffer);
+        } else {
+            buffer.put(METRIC_POINT_FORMAT);
+            metricPointSerializer.serialize(metricPoint, buffer);
+        }
+        buffer.order(order);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricData;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the MetricData of a msgpack array, whose header records its size
+ */
+final class MessagePackMetricDataArray extends MetricDataArray {
+    private final MessagePackSerializer messagePackSerializer;
+    private final MessageUnpacker unpacker;
+    private final int size;
+    private int read;
+
+    MessagePackMetricDataArray(MessagePackSerializer messagePackSerializer, MessageUnpacker unpacker, int size) {
+        this.messagePackSerializer = messagePackSerializer;
+        this.unpacker = unpacker;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return read < size;
+    }
+
+    @Override
+    public MetricData next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            final MetricData metricData = messagePackSerializer.deserialize(unpacker);
+            read++;
+            return metricData;
+        } catch (MessagePackException e) {
+            throw new IOException("Unable to deserialize MetricData", e);
+        }
+    }
+}
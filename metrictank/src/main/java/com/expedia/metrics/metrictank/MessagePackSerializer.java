@@ -16,14 +16,19 @@
 package com.expedia.metrics.metrictank;
 
 import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDataBuffer;
 import com.expedia.metrics.MetricDataSerializer;
 import com.expedia.metrics.MetricDefinition;
 import com.expedia.metrics.TagCollection;
+import com.google.common.cache.Cache;
 import com.google.common.collect.Maps;
 import org.msgpack.core.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 /**
@@ -40,32 +45,178 @@ public class MessagePackSerializer implements MetricDataSerializer {
     private static final String DEFAULT_MTYPE = "gauge";
     
     private static final int METRIC_NUM_FIELDS = 9;
+    // The smallest MetricData that deserializes: a map of OrgId, Name, Interval and Mtype with one byte values
+    private static final int MIN_METRIC_BYTES = 1 + (6 + 1) + (5 + 2) + (9 + 1) + (6 + 2);
+    
+    // Streams and channels are written through a per-thread buffer so that nothing is allocated per call
+    private static final int SCRATCH_BYTES = 8192;
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SCRATCH_BYTES));
     
     private final MetricTankIdFactory idFactory = new MetricTankIdFactory();
+    private final MetricDefinitionCache definitionCache;
+    
+    public MessagePackSerializer() {
+        this.definitionCache = null;
+    }
+    
+    /**
+     * Constructs a MessagePackSerializer that reuses definitions when deserializing. The cache is keyed on the Id
+     * field of each MetricData, which Metrictank derives from every field of the definition. When the Id is in the
+     * cache the cached definition is returned and only the Value and Time are decoded, otherwise the definition is
+     * decoded and added to the cache. The cache should be bounded, e.g. with CacheBuilder.maximumSize.
+     */
+    public MessagePackSerializer(Cache<MetricKey, MetricDefinition> definitionCache) {
+        this(new GuavaMetricDefinitionCache(definitionCache));
+    }
+    
+    /**
+     * Constructs a MessagePackSerializer that reuses definitions when deserializing
+     * @see #MessagePackSerializer(Cache)
+     */
+    public MessagePackSerializer(MetricDefinitionCache definitionCache) {
+        if (definitionCache == null) {
+            throw new IllegalArgumentException("definitionCache is required");
+        }
+        this.definitionCache = definitionCache;
+    }
     
     @Override
     public byte[] serialize(MetricData metric) throws IOException {
-        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
-        serialize(metric, packer);
-        packer.close();
-        return packer.toByteArray();
+        final MetricDataTemplate template = getTemplate(metric.getMetricDefinition());
+        final byte[] bytes = new byte[template.length()];
+        template.writeTo(ByteBuffer.wrap(bytes), metric.getValue(), metric.getTimestamp());
+        return bytes;
     }
     
     @Override
     public byte[] serializeList(List<MetricData> metrics) throws IOException {
-        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
-        packer.packArrayHeader(metrics.size());
-        for (final MetricData metric : metrics) {
-            serialize(metric, packer);
-        }
-        packer.close();
-        return packer.toByteArray();
+        final MetricDataTemplate[] templates = getTemplates(metrics);
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[listLength(templates)]);
+        writeList(metrics, templates, buffer);
+        return buffer.array();
+    }
+    
+    /**
+     * Writes the MetricData at the buffer's position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serialize(MetricData metric, ByteBuffer buffer) throws IOException {
+        final MetricDataTemplate template = getTemplate(metric.getMetricDefinition());
+        checkRemaining(buffer, template.length());
+        template.writeTo(buffer, metric.getValue(), metric.getTimestamp());
+        return template.length();
+    }
+    
+    /**
+     * Writes the list of MetricData at the buffer's position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serializeList(List<MetricData> metrics, ByteBuffer buffer) throws IOException {
+        final MetricDataTemplate[] templates = getTemplates(metrics);
+        final int length = listLength(templates);
+        checkRemaining(buffer, length);
+        writeList(metrics, templates, buffer);
+        return length;
+    }
+    
+    /**
+     * Writes the MetricData to the stream without creating an intermediate array. The stream is not flushed.
+     * @return the number of bytes written
+     */
+    public int serialize(MetricData metric, OutputStream out) throws IOException {
+        return write(metric, bytes -> out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+    }
+    
+    /**
+     * Writes the list of MetricData to the stream in chunks of up to 8KB without encoding the whole list in memory.
+     * The stream is not flushed.
+     * @return the number of bytes written
+     * @throws IOException when a MetricData can't be serialized, in which case the chunks before it have already been
+     * written to the stream
+     */
+    public int serializeList(List<MetricData> metrics, OutputStream out) throws IOException {
+        return writeList(metrics, bytes -> out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+    }
+    
+    /**
+     * Encodes the points of the MetricDataBuffer as a msgpack array of MetricData, the same bytes serializeList
+     * writes for the equivalent list, without creating a MetricData for each point
+     */
+    public byte[] serialize(MetricDataBuffer metrics) throws IOException {
+        final MetricDataTemplate[] templates = getTemplates(metrics);
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[listLength(templates)]);
+        writeList(metrics, templates, buffer);
+        return buffer.array();
+    }
+    
+    /**
+     * Writes the points of the MetricDataBuffer as a msgpack array of MetricData at the buffer's position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serialize(MetricDataBuffer metrics, ByteBuffer buffer) throws IOException {
+        final MetricDataTemplate[] templates = getTemplates(metrics);
+        final int length = listLength(templates);
+        checkRemaining(buffer, length);
+        writeList(metrics, templates, buffer);
+        return length;
+    }
+    
+    /**
+     * Writes the points of the MetricDataBuffer as a msgpack array of MetricData to the stream in chunks of up to
+     * 8KB. The stream is not flushed.
+     * @return the number of bytes written
+     * @throws IOException when a point can't be serialized, in which case the chunks before it have already been
+     * written to the stream
+     */
+    public int serialize(MetricDataBuffer metrics, OutputStream out) throws IOException {
+        return writeList(metrics, bytes -> out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+    }
+    
+    /**
+     * Writes the MetricData to the channel without creating an intermediate array
+     * @return the number of bytes written
+     */
+    public int serialize(MetricData metric, WritableByteChannel channel) throws IOException {
+        return write(metric, bytes -> writeFully(channel, bytes));
+    }
+    
+    /**
+     * Writes the list of MetricData to the channel in chunks of up to 8KB without encoding the whole list in memory
+     * @return the number of bytes written
+     * @throws IOException when a MetricData can't be serialized, in which case the chunks before it have already been
+     * written to the channel
+     */
+    public int serializeList(List<MetricData> metrics, WritableByteChannel channel) throws IOException {
+        return writeList(metrics, bytes -> writeFully(channel, bytes));
     }
     
     public MetricData deserialize(ByteBuffer buffer) throws IOException {
         try {
             final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(buffer);
-            MetricData metricData = deserialize(unpacker);
+            MetricData metricData = deserialize(unpacker, null);
+            unpacker.close();
+            return metricData;
+        } catch (MessagePackException e) {
+            throw new IOException("Unable to deserialize MetricData", e);
+        }
+    }
+    
+    /**
+     * Deserializes the MetricData without parsing its tags. The Tags array is validated and kept as a slice of the
+     * buffer, and is only parsed into a TagCollection when getTags is first called on the definition. This suits
+     * consumers that route or filter on the name, org id, value or time and pass the tags through untouched.
+     * <p>
+     * The definition refers to the buffer's contents, so the buffer must not be modified while the MetricData is in
+     * use. A definition that is added to the definition cache outlives the MetricData, so its tags are copied out of
+     * the buffer instead. Malformed tags are reported by getTags with an UncheckedIOException.
+     */
+    public MetricData deserializeLazily(ByteBuffer buffer) throws IOException {
+        try {
+            final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(buffer);
+            MetricData metricData = deserialize(unpacker, buffer);
             unpacker.close();
             return metricData;
         } catch (MessagePackException e) {
@@ -90,17 +241,53 @@ public class MessagePackSerializer implements MetricDataSerializer {
         return metrics;
     }
     
+    /**
+     * Reads a msgpack array of MetricData and adds the definition, value and time of each to the MetricDataBuffer
+     * without creating a MetricData for each. With a definition cache the definitions of known series are reused, so
+     * a batch of known series is read without allocating per point.
+     * @return the number of points added
+     */
+    public int deserializeInto(ByteBuffer buffer, MetricDataBuffer result) throws IOException {
+        try {
+            final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(buffer);
+            final int numMetrics = unpacker.unpackArrayHeader();
+            // The header is untrusted, so size the buffer for no more elements than the remaining bytes can hold
+            final long remaining = buffer.remaining() - unpacker.getTotalReadBytes();
+            result.ensureCapacity(result.size() + (int) Math.min(numMetrics, remaining / MIN_METRIC_BYTES));
+            final byte[] scratch = newScratch();
+            for (int i = 0; i < numMetrics; i++) {
+                deserialize(unpacker, null, result, scratch);
+            }
+            unpacker.close();
+            return numMetrics;
+        } catch (MessagePackException e) {
+            throw new IOException("Unable to deserialize MetricData array", e);
+        }
+    }
+    
+    public int deserializeInto(byte[] bytes, MetricDataBuffer result) throws IOException {
+        return deserializeInto(ByteBuffer.wrap(bytes), result);
+    }
+    
+    /**
+     * Returns a reader that deserializes the MetricData of a msgpack array as they are read, instead of building a
+     * list of the whole array
+     */
+    public MetricDataArray deserializeArray(ByteBuffer buffer) throws IOException {
+        try {
+            final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(buffer);
+            return new MessagePackMetricDataArray(this, unpacker, unpacker.unpackArrayHeader());
+        } catch (MessagePackException e) {
+            throw new IOException("Unable to deserialize MetricData array", e);
+        }
+    }
+    
     @Override
     public List<MetricData> deserializeList(byte[] bytes) throws IOException {
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
         return deserializeList(buffer);
     }
 
-    private void serialize(MetricData metric, MessagePacker packer) throws IOException {
-        MetricDefinition md = metric.getMetricDefinition();
-        serialize(metric, packer, getOrgId(md), getInterval(md), getUnit(md), getMtype(md));
-    }
-
     static int getOrgId(MetricDefinition metric) {
         if (metric instanceof MetricTankMetricDefinition) {
             return ((MetricTankMetricDefinition) metric).getOrgId();
@@ -129,27 +316,197 @@ public class MessagePackSerializer implements MetricDataSerializer {
         return DEFAULT_MTYPE;
     }
 
-    private void serialize(MetricData metric, MessagePacker packer, int orgId, int interval, String unit, String mtype) throws IOException {
-        final String name = metric.getMetricDefinition().getKey();
+    private MetricDataTemplate[] getTemplates(List<MetricData> metrics) throws IOException {
+        final MetricDataTemplate[] templates = new MetricDataTemplate[metrics.size()];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = getTemplate(metrics.get(i).getMetricDefinition());
+        }
+        return templates;
+    }
+    
+    private MetricDataTemplate[] getTemplates(MetricDataBuffer metrics) throws IOException {
+        final MetricDataTemplate[] templates = new MetricDataTemplate[metrics.size()];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = getTemplate(metrics.getMetricDefinition(i));
+        }
+        return templates;
+    }
+    
+    private static int listLength(MetricDataTemplate[] templates) {
+        int length = arrayHeaderLength(templates.length);
+        for (final MetricDataTemplate template : templates) {
+            length += template.length();
+        }
+        return length;
+    }
+    
+    private static void writeList(List<MetricData> metrics, MetricDataTemplate[] templates, ByteBuffer buffer) {
+        writeArrayHeader(buffer, templates.length);
+        for (int i = 0; i < templates.length; i++) {
+            final MetricData metric = metrics.get(i);
+            templates[i].writeTo(buffer, metric.getValue(), metric.getTimestamp());
+        }
+    }
+    
+    private static void writeList(MetricDataBuffer metrics, MetricDataTemplate[] templates, ByteBuffer buffer) {
+        writeArrayHeader(buffer, templates.length);
+        for (int i = 0; i < templates.length; i++) {
+            templates[i].writeTo(buffer, metrics.getValue(i), metrics.getTimestamp(i));
+        }
+    }
+    
+    private static void checkRemaining(ByteBuffer buffer, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            throw new IOException("Insufficient capacity to hold " + length + " bytes of MetricData");
+        }
+    }
+    
+    private static void writeFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+    
+    private int write(MetricData metric, Sink sink) throws IOException {
+        final MetricDataTemplate template = getTemplate(metric.getMetricDefinition());
+        final ByteBuffer scratch = getScratch(template.length());
+        template.writeTo(scratch, metric.getValue(), metric.getTimestamp());
+        drain(scratch, sink);
+        return template.length();
+    }
+    
+    private int writeList(List<MetricData> metrics, Sink sink) throws IOException {
+        ByteBuffer scratch = getScratch(SCRATCH_BYTES);
+        writeArrayHeader(scratch, metrics.size());
+        int length = arrayHeaderLength(metrics.size());
+        for (final MetricData metric : metrics) {
+            final MetricDataTemplate template = getTemplate(metric.getMetricDefinition());
+            if (scratch.remaining() < template.length()) {
+                drain(scratch, sink);
+                if (scratch.capacity() < template.length()) {
+                    scratch = getScratch(template.length());
+                }
+            }
+            template.writeTo(scratch, metric.getValue(), metric.getTimestamp());
+            length += template.length();
+        }
+        drain(scratch, sink);
+        return length;
+    }
+    
+    private int writeList(MetricDataBuffer metrics, Sink sink) throws IOException {
+        ByteBuffer scratch = getScratch(SCRATCH_BYTES);
+        writeArrayHeader(scratch, metrics.size());
+        int length = arrayHeaderLength(metrics.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            final MetricDataTemplate template = getTemplate(metrics.getMetricDefinition(i));
+            if (scratch.remaining() < template.length()) {
+                drain(scratch, sink);
+                if (scratch.capacity() < template.length()) {
+                    scratch = getScratch(template.length());
+                }
+            }
+            template.writeTo(scratch, metrics.getValue(i), metrics.getTimestamp(i));
+            length += template.length();
+        }
+        drain(scratch, sink);
+        return length;
+    }
+    
+    /**
+     * @return this thread's cleared scratch buffer, grown if needed to hold at least length bytes
+     */
+    private static ByteBuffer getScratch(int length) {
+        ByteBuffer scratch = SCRATCH.get();
+        if (scratch.capacity() < length) {
+            scratch = ByteBuffer.allocate(length);
+            SCRATCH.set(scratch);
+        }
+        scratch.clear();
+        return scratch;
+    }
+    
+    private static void drain(ByteBuffer scratch, Sink sink) throws IOException {
+        scratch.flip();
+        sink.write(scratch);
+        scratch.clear();
+    }
+    
+    /**
+     * Destination for encoded bytes that are staged in the scratch buffer
+     */
+    private interface Sink {
+        void write(ByteBuffer bytes) throws IOException;
+    }
+    
+    private static int arrayHeaderLength(int size) {
+        if (size < 16) {
+            return 1;
+        } else if (size < (1 << 16)) {
+            return 3;
+        }
+        return 5;
+    }
+    
+    /**
+     * Writes the header in big-endian order, whatever the order of the buffer.
+     */
+    private static void writeArrayHeader(ByteBuffer buffer, int size) {
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (size < 16) {
+            buffer.put((byte) (MessagePack.Code.FIXARRAY_PREFIX | size));
+        } else if (size < (1 << 16)) {
+            buffer.put(MessagePack.Code.ARRAY16);
+            buffer.putShort((short) size);
+        } else {
+            buffer.put(MessagePack.Code.ARRAY32);
+            buffer.putInt(size);
+        }
+        buffer.order(order);
+    }
+    
+    /**
+     * The template of a MetricTankMetricDefinition is created once and then memoized on the definition.
+     */
+    private MetricDataTemplate getTemplate(MetricDefinition md) throws IOException {
+        if (!(md instanceof MetricTankMetricDefinition)) {
+            return createTemplate(md);
+        }
+        final MetricTankMetricDefinition metricTankMetric = (MetricTankMetricDefinition) md;
+        MetricDataTemplate template = metricTankMetric.getMetricDataTemplate();
+        if (template == null) {
+            template = createTemplate(md);
+            metricTankMetric.setMetricDataTemplate(template);
+        }
+        return template;
+    }
+    
+    private MetricDataTemplate createTemplate(MetricDefinition md) throws IOException {
+        final int orgId = getOrgId(md);
+        final int interval = getInterval(md);
+        final String unit = getUnit(md);
+        final String mtype = getMtype(md);
+        final String name = md.getKey();
         if (name == null) {
             throw new IOException("Key is required by metrictank");
         }
-        if (!metric.getMetricDefinition().getMeta().isEmpty()) {
+        if (!md.getMeta().isEmpty()) {
             throw new IOException("Metrictank does not support meta tags");
         }
-        if (!metric.getMetricDefinition().getTags().getV().isEmpty()) {
+        if (md.getTags().vSize() != 0) {
             throw new IOException("Metrictank does not support value tags");
         }
-        Map<String, String> tags = new HashMap<>(metric.getMetricDefinition().getTags().getKv());
         if (unit == null) {
             throw new IOException("Tag 'unit' is required by metrictank");
         }
         if (mtype == null) {
             throw new IOException("Tag 'mtype' is required by metrictank");
         }
-        List<String> formattedTags = idFactory.formatTags(tags);
-        final String id = idFactory.getId(orgId, name, unit, mtype, interval, formattedTags);
+        final String id = idFactory.getId(md);
+        final List<String> formattedTags = idFactory.formatTags(md.getTags());
         
+        final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
         packer.packMapHeader(METRIC_NUM_FIELDS);
         packer.packString("Id");
         packer.packString(id);
@@ -160,16 +517,18 @@ public class MessagePackSerializer implements MetricDataSerializer {
         packer.packString("Interval");
         packer.packInt(interval);
         packer.packString("Value");
-        packer.packDouble(metric.getValue());
+        // packDouble always writes a float64
+        final int valueOffset = (int) packer.getTotalWrittenBytes() + 1;
+        packer.packDouble(0.0);
         packer.packString("Unit");
         packer.packString(unit);
         packer.packString("Time");
         
         // packLong auto converts to narrowest int type, but Raintank requires a signed int64, so we manually pack the time
-        final ByteBuffer b = ByteBuffer.allocate(1 + Long.BYTES);
-        b.put(MessagePack.Code.INT64);
-        b.putLong(metric.getTimestamp());
-        packer.addPayload(b.array());
+        final int timeOffset = (int) packer.getTotalWrittenBytes() + 1;
+        final byte[] time = new byte[1 + Long.BYTES];
+        time[0] = MessagePack.Code.INT64;
+        packer.writePayload(time);
         
         packer.packString("Mtype");
         packer.packString(mtype);
@@ -178,9 +537,27 @@ public class MessagePackSerializer implements MetricDataSerializer {
         for (final String tag : formattedTags) {
             packer.packString(tag);
         }
+        packer.close();
+        return new MetricDataTemplate(packer.toByteArray(), valueOffset, timeOffset);
     }
     
-    private MetricData deserialize(MessageUnpacker unpacker) throws IOException {
+    MetricData deserialize(MessageUnpacker unpacker) throws IOException {
+        return deserialize(unpacker, null);
+    }
+    
+    /**
+     * @param lazySource the buffer the unpacker reads from when the tags should be parsed lazily, otherwise null
+     */
+    private MetricData deserialize(MessageUnpacker unpacker, ByteBuffer lazySource) throws IOException {
+        return deserialize(unpacker, lazySource, null, newScratch());
+    }
+    
+    /**
+     * @param target the buffer the point is added to, or null to return it as a MetricData
+     * @param scratch an array from newScratch, which may be reused across calls
+     * @return the MetricData, or null when it was added to the target
+     */
+    private MetricData deserialize(MessageUnpacker unpacker, ByteBuffer lazySource, MetricDataBuffer target, byte[] scratch) throws IOException {
         int orgId = 0;
         String name = "";
         int interval = 0;
@@ -188,66 +565,156 @@ public class MessagePackSerializer implements MetricDataSerializer {
         String unit = "";
         long timestamp = 0L;
         String mtype = "";
-        List<String> rawTags = Collections.emptyList();
+        TagCollection tags = TagCollection.EMPTY;
+        ByteBuffer encodedTags = null;
+        MetricKey idKey = null;
+        MetricDefinition cached = null;
+        MetricDataField field = null;
         for (int numFields = unpacker.unpackMapHeader(); numFields > 0; numFields--) {
-            String fieldName = unpacker.unpackString();
-            switch(fieldName) {
-                case "Id":
-                    unpacker.unpackString();
+            final MetricDataField previous = field;
+            field = MetricDataField.read(unpacker, scratch, previous);
+            if (field == null) {
+                // Discard unknown values
+                unpacker.skipValue();
+                field = previous;
+                continue;
+            }
+            if (cached != null && field != MetricDataField.VALUE && field != MetricDataField.TIME) {
+                unpacker.skipValue();
+                continue;
+            }
+            switch(field) {
+                case ID:
+                    if (definitionCache == null) {
+                        // The id is derived from the other fields, so it is not decoded
+                        unpacker.skipValue();
+                    } else {
+                        idKey = readIdKey(unpacker, scratch);
+                        cached = idKey == null ? null : definitionCache.get(idKey);
+                    }
                     break;
-                case "OrgId":
+                case ORG_ID:
                     orgId = unpacker.unpackInt();
                     break;
-                case "Name":
+                case NAME:
                     name = unpacker.unpackString();
                     break;
-                case "Interval":
+                case INTERVAL:
                     interval = unpacker.unpackInt();
                     break;
-                case "Value":
+                case VALUE:
                     value = unpacker.unpackDouble();
                     break;
-                case "Unit":
+                case UNIT:
                     unit = unpacker.unpackString();
                     break;
-                case "Time":
+                case TIME:
                     timestamp = unpacker.unpackLong();
                     break;
-                case "Mtype":
+                case MTYPE:
                     mtype = unpacker.unpackString();
                     break;
-                case "Tags":
-                    final int numTags = unpacker.unpackArrayHeader();
-                    rawTags = new ArrayList<>(numTags);
-                    for (int i = 0; i < numTags; i++) {
-                        rawTags.add(unpacker.unpackString());
+                case TAGS:
+                    if (lazySource == null) {
+                        tags = readTags(unpacker);
+                    } else {
+                        encodedTags = sliceValue(unpacker, lazySource);
                     }
                     break;
-                default:
-                    // Discard unknown values
-                    unpacker.unpackValue();
-                    break;
             }
         }
         
+        if (cached != null) {
+            return complete(cached, value, timestamp, target);
+        }
+        
         throwIfMissing("OrgId", orgId == 0);
         throwIfMissing("Name", name.isEmpty());
         throwIfMissing("Interval", interval == 0);
         throwIfMissing("Mtype", mtype.isEmpty());
         
-        final Map<String, String> kvTags = Maps.newHashMapWithExpectedSize(rawTags.size());
-        for (final String tag : rawTags) {
-            final int pos = tag.indexOf('=');
-            if (pos == -1) {
-                throw new IOException("Read a tag with no '=': "+tag);
-            }
-            final String tagKey = tag.substring(0, pos);
-            final String tagValue = tag.substring(pos+1);
-            kvTags.put(tagKey, tagValue);
+        if (encodedTags != null && idKey != null) {
+            encodedTags = copyOf(encodedTags);
         }
-        
-        TagCollection tags = new TagCollection(kvTags);
-        return new MetricData(new MetricTankMetricDefinition(name, tags, TagCollection.EMPTY, orgId, interval, unit, mtype), value, timestamp);
+        final MetricDefinition definition = encodedTags == null
+                ? new MetricTankMetricDefinition(name, tags, TagCollection.EMPTY, orgId, interval, unit, mtype)
+                : new MetricTankMetricDefinition(name, encodedTags, orgId, interval, unit, mtype);
+        if (idKey != null) {
+            definitionCache.put(idKey, definition);
+        }
+        return complete(definition, value, timestamp, target);
+    }
+    
+    private byte[] newScratch() {
+        return new byte[definitionCache == null ? MetricDataField.MAX_NAME_BYTES : MetricKey.MAX_ID_BYTES];
+    }
+    
+    private static MetricData complete(MetricDefinition definition, double value, long timestamp, MetricDataBuffer target) {
+        if (target == null) {
+            return new MetricData(definition, value, timestamp);
+        }
+        target.add(definition, value, timestamp);
+        return null;
+    }
+    
+    /**
+     * Reads a msgpack array of "key=value" strings
+     */
+    static TagCollection readTags(MessageUnpacker unpacker) throws IOException {
+        final int numTags = unpacker.unpackArrayHeader();
+        final Map<String, String> kvTags = Maps.newHashMapWithExpectedSize(numTags);
+        for (int i = 0; i < numTags; i++) {
+            putTag(kvTags, unpacker.unpackString());
+        }
+        return new TagCollection(kvTags);
+    }
+    
+    /**
+     * Splits a "key=value" tag into the map
+     */
+    static void putTag(Map<String, String> kvTags, String tag) throws IOException {
+        final int pos = tag.indexOf('=');
+        if (pos == -1) {
+            throw new IOException("Read a tag with no '=': "+tag);
+        }
+        final String tagKey = tag.substring(0, pos);
+        final String tagValue = tag.substring(pos+1);
+        kvTags.put(tagKey, tagValue);
+    }
+    
+    /**
+     * Skips the next value and returns the bytes it was encoded in as a slice of the source buffer
+     */
+    private static ByteBuffer sliceValue(MessageUnpacker unpacker, ByteBuffer source) throws IOException {
+        final int start = source.position() + (int) unpacker.getTotalReadBytes();
+        unpacker.skipValue();
+        final int end = source.position() + (int) unpacker.getTotalReadBytes();
+        final ByteBuffer slice = source.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        return slice.slice();
+    }
+    
+    /**
+     * Copies a slice so that a cached definition neither refers to nor keeps alive the buffer it was read from
+     */
+    private static ByteBuffer copyOf(ByteBuffer slice) {
+        final byte[] bytes = new byte[slice.remaining()];
+        slice.duplicate().get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+    
+    /**
+     * @return the key parsed from the Id string, or null if the Id is not a well formed Metrictank id
+     */
+    private static MetricKey readIdKey(MessageUnpacker unpacker, byte[] scratch) throws IOException {
+        final int length = unpacker.unpackRawStringHeader();
+        if (length > scratch.length) {
+            unpacker.readPayload(length);
+            return null;
+        }
+        unpacker.readPayload(scratch, 0, length);
+        return MetricKey.parse(scratch, length);
     }
     
     private void throwIfMissing(String fieldName, boolean isMissing) throws IOException {
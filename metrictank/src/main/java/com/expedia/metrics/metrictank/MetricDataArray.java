@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricData;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the MetricData of an array one at a time, so that a large array is never held in memory as a whole. The
+ * buffer the array is read from must not be modified while it is being read. This class is not thread-safe.
+ *
+ * @see MessagePackSerializer#deserializeArray(java.nio.ByteBuffer)
+ * @see JsonMetricDataDeserializer#deserializeArray(java.nio.ByteBuffer)
+ */
+public abstract class MetricDataArray {
+    MetricDataArray() {
+    }
+
+    /**
+     * @return the number of MetricData in the array, or -1 if the format does not record it, as for JSON
+     */
+    public abstract int size();
+
+    /**
+     * @throws IOException when the array can't be deserialized
+     */
+    public abstract boolean hasNext() throws IOException;
+
+    /**
+     * @throws NoSuchElementException when every MetricData has been read
+     * @throws IOException when the next MetricData can't be deserialized
+     */
+    public abstract MetricData next() throws IOException;
+}
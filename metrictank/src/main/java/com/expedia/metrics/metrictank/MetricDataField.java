@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The fields of the msgpack MetricData map, in the order they are written by Metrictank's generated msgp encoder and
+ * by MessagePackSerializer. Field names are matched as raw bytes so that no String is created per field.
+ */
+enum MetricDataField {
+    ID("Id"),
+    ORG_ID("OrgId"),
+    NAME("Name"),
+    INTERVAL("Interval"),
+    VALUE("Value"),
+    UNIT("Unit"),
+    TIME("Time"),
+    MTYPE("Mtype"),
+    TAGS("Tags");
+
+    private static final MetricDataField[] FIELDS = values();
+
+    /**
+     * Length of the longest field name, and so the smallest scratch array that can be passed to read()
+     */
+    static final int MAX_NAME_BYTES = 8;
+
+    private final byte[] name;
+
+    MetricDataField(String name) {
+        this.name = name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a field name. The field that follows previous in the canonical order is checked first, so a map written
+     * in that order needs a single comparison per field.
+     * @param scratch an array of at least MAX_NAME_BYTES used to hold the name
+     * @param previous the previously read field, or null at the start of the map
+     * @return the field, or null for an unknown field name
+     */
+    static MetricDataField read(MessageUnpacker unpacker, byte[] scratch, MetricDataField previous) throws IOException {
+        int length = unpacker.unpackRawStringHeader();
+        if (length > MAX_NAME_BYTES) {
+            while (length > 0) {
+                final int n = Math.min(length, scratch.length);
+                unpacker.readPayload(scratch, 0, n);
+                length -= n;
+            }
+            return null;
+        }
+        unpacker.readPayload(scratch, 0, length);
+
+        final int expected = previous == null ? 0 : previous.ordinal() + 1;
+        if (expected < FIELDS.length && FIELDS[expected].matches(scratch, length)) {
+            return FIELDS[expected];
+        }
+        for (final MetricDataField field : FIELDS) {
+            if (field.matches(scratch, length)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(byte[] bytes, int length) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
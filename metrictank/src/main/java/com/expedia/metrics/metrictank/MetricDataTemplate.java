@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The msgpack encoding of a MetricData for one metric definition. Every field except Value and Time depends only on
+ * the definition, so a MetricData is encoded by copying the template and writing its value and time over the
+ * placeholders.
+ */
+final class MetricDataTemplate {
+    private final byte[] bytes;
+    // Offsets of the 8 byte payloads of the float64 Value and int64 Time
+    private final int valueOffset;
+    private final int timeOffset;
+
+    MetricDataTemplate(byte[] bytes, int valueOffset, int timeOffset) {
+        this.bytes = bytes;
+        this.valueOffset = valueOffset;
+        this.timeOffset = timeOffset;
+    }
+
+    /**
+     * @return the length in bytes of every MetricData encoded from this template
+     */
+    int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Writes the encoded MetricData at the buffer's position. The caller must check that the buffer has length()
+     * bytes remaining.
+     */
+    void writeTo(ByteBuffer buffer, double value, long timestamp) {
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.put(bytes, 0, valueOffset);
+        buffer.putDouble(value);
+        buffer.put(bytes, valueOffset + Long.BYTES, timeOffset - valueOffset - Long.BYTES);
+        buffer.putLong(timestamp);
+        buffer.put(bytes, timeOffset + Long.BYTES, bytes.length - timeOffset - Long.BYTES);
+        buffer.order(order);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricDefinition;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Cache of the definitions of Metrictank series, keyed on the org id and id of each series. Implementations must be
+ * safe for use by multiple threads.
+ *
+ * @see PrimitiveMetricDefinitionCache
+ */
+public interface MetricDefinitionCache {
+    /**
+     * @return the cached definition, or null if the key is not in the cache
+     */
+    MetricDefinition get(int orgId, long idHigh, long idLow);
+
+    /**
+     * @return the cached definition, or null if the key is not in the cache
+     */
+    default MetricDefinition get(MetricKey key) {
+        return get(key.getOrgId(), key.getIdHigh(), key.getIdLow());
+    }
+
+    void put(MetricKey key, MetricDefinition definition);
+
+    /**
+     * Passes each cached entry to the action. The action may be called while the cache is locked, so it should be
+     * quick and must not call back into the cache.
+     */
+    void forEach(BiConsumer<MetricKey, MetricDefinition> action);
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDefinition;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the contents of a MetricDefinitionCache to a file and loads it back, so that a consumer that restarts can
+ * resolve MetricPoints straight away instead of waiting for the next MetricData of every series.
+ * <p>
+ * The file holds a header followed by one entry per series: the org id and id of its key, then the length and bytes
+ * of the definition in the Kafka-mdm MetricData msgpack format written by MessagePackSerializer. Files are limited
+ * to 2GB, because they are loaded through a single memory map.
+ */
+public class MetricDefinitionSnapshot {
+    private static final int MAGIC = 0x4d445301;
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int ENTRY_HEADER_BYTES = Integer.BYTES + Long.BYTES * 2 + Integer.BYTES;
+
+    private final MessagePackSerializer messagePackSerializer = new MessagePackSerializer();
+
+    /**
+     * Writes the entries of the cache to a temporary file and then atomically replaces the file with it, so readers
+     * never see a partial snapshot. The cache is only locked while its entries are copied to a list. Each call writes
+     * a full snapshot; callers that want periodic snapshots schedule it themselves, e.g. with a
+     * ScheduledExecutorService.
+     * @return the number of entries written
+     */
+    public int write(MetricDefinitionCache cache, Path file) throws IOException {
+        final List<MetricKey> keys = new ArrayList<>();
+        final List<MetricDefinition> definitions = new ArrayList<>();
+        cache.forEach((key, definition) -> {
+            keys.add(key);
+            definitions.add(definition);
+        });
+
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                for (int i = 0; i < keys.size(); i++) {
+                    final MetricKey key = keys.get(i);
+                    final byte[] bytes = messagePackSerializer.serialize(new MetricData(definitions.get(i), 0.0, 0L));
+                    out.writeInt(key.getOrgId());
+                    out.writeLong(key.getIdHigh());
+                    out.writeLong(key.getIdLow());
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return keys.size();
+    }
+
+    /**
+     * Memory maps the file, decodes its definitions in parallel and then puts them into the cache in file order
+     * @return the number of entries loaded
+     * @throws IOException when the file can't be read or is not a valid snapshot, in which case nothing is loaded
+     */
+    public int load(Path file, MetricDefinitionCache cache) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is larger than 2GB: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final int[] offsets = findEntries(mapped);
+        final MetricDefinition[] definitions = new MetricDefinition[offsets.length];
+        try {
+            IntStream.range(0, offsets.length).parallel().forEach(i -> definitions[i] = readDefinition(mapped, offsets[i]));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            final int offset = offsets[i];
+            final MetricKey key = new MetricKey(mapped.getInt(offset), mapped.getLong(offset + Integer.BYTES),
+                    mapped.getLong(offset + Integer.BYTES + Long.BYTES));
+            cache.put(key, definitions[i]);
+        }
+        return offsets.length;
+    }
+
+    /**
+     * @return the offset of each entry
+     */
+    private static int[] findEntries(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a MetricDefinition snapshot");
+        }
+        int[] offsets = new int[1024];
+        int count = 0;
+        int offset = HEADER_BYTES;
+        while (offset < buffer.limit()) {
+            if (buffer.limit() - offset < ENTRY_HEADER_BYTES) {
+                throw new IOException("Truncated snapshot entry at offset " + offset);
+            }
+            final int length = buffer.getInt(offset + ENTRY_HEADER_BYTES - Integer.BYTES);
+            if (length < 0 || buffer.limit() - offset - ENTRY_HEADER_BYTES < length) {
+                throw new IOException("Truncated snapshot entry at offset " + offset);
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = offset;
+            offset += ENTRY_HEADER_BYTES + length;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private MetricDefinition readDefinition(ByteBuffer buffer, int offset) {
+        // msgpack can't unpack from a slice of a direct buffer on JDK 9+, so each entry is copied to the heap first
+        final byte[] bytes = new byte[buffer.getInt(offset + ENTRY_HEADER_BYTES - Integer.BYTES)];
+        final ByteBuffer entry = buffer.duplicate();
+        entry.position(offset + ENTRY_HEADER_BYTES);
+        entry.get(bytes);
+        try {
+            return messagePackSerializer.deserialize(bytes).getMetricDefinition();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Invalid snapshot entry at offset " + offset, e));
+        }
+    }
+}
@@ -17,47 +17,174 @@ package com.expedia.metrics.metrictank;
 
 import com.expedia.metrics.util.Encoder;
 
-import java.util.Arrays;
-
+/**
+ * Identifies a Metrictank series by its org id and the 16 byte MD5 id of its definition. The id is held as two longs
+ * so that keys are compact and can be hashed and compared without touching an array.
+ */
 public class MetricKey {
+    public static final int ID_BYTES = 16;
+
+    /**
+     * The maximum length of the string form of a key: a signed int org id, '.', and 32 hex digits
+     */
+    static final int MAX_ID_BYTES = 11 + 1 + ID_BYTES * 2;
+
     private final int orgId;
-    private final byte[] id;
+    private final long idHigh;
+    private final long idLow;
 
+    /**
+     * @param id the 16 byte id, which is not retained
+     */
     public MetricKey(int orgId, byte[] id) {
+        this(orgId, readLong(id, 0), readLong(id, Long.BYTES));
+    }
+
+    /**
+     * @param idHigh the first 8 bytes of the id, big-endian
+     * @param idLow the last 8 bytes of the id, big-endian
+     */
+    public MetricKey(int orgId, long idHigh, long idLow) {
         this.orgId = orgId;
-        this.id = id;
+        this.idHigh = idHigh;
+        this.idLow = idLow;
     }
 
     public int getOrgId() {
         return orgId;
     }
 
+    /**
+     * @return a new copy of the 16 byte id
+     */
     public byte[] getId() {
+        final byte[] id = new byte[ID_BYTES];
+        writeLong(id, 0, idHigh);
+        writeLong(id, Long.BYTES, idLow);
         return id;
     }
 
+    public long getIdHigh() {
+        return idHigh;
+    }
+
+    public long getIdLow() {
+        return idLow;
+    }
+
+    /**
+     * @return true if this key has the supplied org id and id
+     */
+    public boolean matches(int orgId, long idHigh, long idLow) {
+        return this.orgId == orgId && this.idHigh == idHigh && this.idLow == idLow;
+    }
+
+    /**
+     * Hashes a key from its parts, so that callers holding primitives can hash without creating a MetricKey.
+     * The id is already an MD5 digest, but its bits are still mixed (using the MurmurHash3 finalizer) so that every
+     * bit of the key affects the low bits of the hash used by hash tables.
+     */
+    static int hash(int orgId, long idHigh, long idLow) {
+        long h = idHigh ^ (idLow * 0x9E3779B97F4A7C15L) ^ orgId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Parses the string form of a key, as written by toString() and by Metrictank, from ASCII bytes
+     * @return the key, or null if the bytes are not a well formed key
+     */
+    static MetricKey parse(byte[] bytes, int length) {
+        final int dot = length - 1 - ID_BYTES * 2;
+        if (dot < 1 || bytes[dot] != '.') {
+            return null;
+        }
+        final boolean negative = bytes[0] == '-';
+        if (negative && dot == 1) {
+            return null;
+        }
+        long orgId = 0;
+        for (int i = negative ? 1 : 0; i < dot; i++) {
+            final int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            orgId = orgId * 10 + digit;
+            if (orgId > (long) Integer.MAX_VALUE + 1) {
+                return null;
+            }
+        }
+        orgId = negative ? -orgId : orgId;
+        if (orgId != (int) orgId) {
+            return null;
+        }
+        long idHigh = 0;
+        long idLow = 0;
+        for (int i = 0; i < ID_BYTES; i++) {
+            final int digit = hexDigit(bytes[dot + 1 + i]);
+            final int lowDigit = hexDigit(bytes[dot + 1 + ID_BYTES + i]);
+            if (digit < 0 || lowDigit < 0) {
+                return null;
+            }
+            idHigh = (idHigh << 4) | digit;
+            idLow = (idLow << 4) | lowDigit;
+        }
+        return new MetricKey((int) orgId, idHigh, idLow);
+    }
+
+    private static int hexDigit(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static long readLong(byte[] id, int offset) {
+        if (id == null || id.length != ID_BYTES) {
+            throw new IllegalArgumentException("id must be " + ID_BYTES + " bytes");
+        }
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (id[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] id, int offset, long value) {
+        for (int i = offset + Long.BYTES - 1; i >= offset; i--) {
+            id[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MetricKey metricKey = (MetricKey) o;
-        return orgId == metricKey.orgId &&
-            Arrays.equals(id, metricKey.id);
+        return matches(metricKey.orgId, metricKey.idHigh, metricKey.idLow);
     }
 
     @Override
     public int hashCode() {
-        int result = Integer.hashCode(orgId);
-        result = result ^ Arrays.hashCode(id);
-        return result;
+        return hash(orgId, idHigh, idLow);
     }
 
     @Override
     public String toString() {
         String orgId = Integer.toString(this.orgId);
-        final StringBuilder sb = new StringBuilder(orgId.length() + 1 + id.length*2);
+        final StringBuilder sb = new StringBuilder(orgId.length() + 1 + ID_BYTES * 2);
         sb.append(orgId).append('.');
-        Encoder.encodeHex(sb, id);
+        Encoder.encodeHex(sb, idHigh);
+        Encoder.encodeHex(sb, idLow);
         return sb.toString();
     }
 }
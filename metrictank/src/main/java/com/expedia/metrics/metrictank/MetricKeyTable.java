@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+/**
+ * An open addressing hash table of MetricKeys, held as primitives in parallel arrays so that no object is allocated
+ * per key. Keys are found by linear probing and removed by shifting the rest of their probe run back, so the table
+ * never fills with tombstones. Subclasses keep their values in arrays indexed by slot and move them when the table
+ * moves a key. This class is not thread-safe.
+ */
+abstract class MetricKeyTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] orgIds;
+    private long[] idHighs;
+    private long[] idLows;
+    private boolean[] occupied;
+    private int mask;
+    private int size;
+
+    MetricKeyTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    final int size() {
+        return size;
+    }
+
+    final int capacity() {
+        return occupied.length;
+    }
+
+    final boolean isOccupied(int slot) {
+        return occupied[slot];
+    }
+
+    final MetricKey getKey(int slot) {
+        return new MetricKey(orgIds[slot], idHighs[slot], idLows[slot]);
+    }
+
+    /**
+     * @return the slot holding the key, or -1 if the key is not in the table
+     */
+    final int find(int orgId, long idHigh, long idLow) {
+        int slot = MetricKey.hash(orgId, idHigh, idLow) & mask;
+        while (occupied[slot]) {
+            if (idLows[slot] == idLow && idHighs[slot] == idHigh && orgIds[slot] == orgId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a key that is not in the table, growing the table if it would become more than three quarters full
+     * @return the slot now holding the key
+     */
+    final int add(int orgId, long idHigh, long idLow) {
+        if ((size + 1) * 4L > capacity() * 3L) {
+            grow();
+        }
+        final int slot = freeSlot(orgId, idHigh, idLow);
+        orgIds[slot] = orgId;
+        idHighs[slot] = idHigh;
+        idLows[slot] = idLow;
+        occupied[slot] = true;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes the key in the slot. Later keys in the same probe run are moved back to fill the gap, so the slot may
+     * hold a different key afterwards.
+     */
+    final void remove(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (occupied[next]) {
+            final int home = MetricKey.hash(orgIds[next], idHighs[next], idLows[next]) & mask;
+            // The key can fill the gap if the gap lies on its probe path, i.e. between its home slot and its slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                orgIds[gap] = orgIds[next];
+                idHighs[gap] = idHighs[next];
+                idLows[gap] = idLows[next];
+                move(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        occupied[gap] = false;
+        clear(gap);
+        size--;
+    }
+
+    /**
+     * Moves the value in one slot to another slot
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * Releases the value in a slot that no longer holds a key
+     */
+    abstract void clear(int slot);
+
+    /**
+     * Replaces the value arrays with arrays of the new capacity
+     * @param newSlots the new slot of the key in each old slot, or -1 for old slots that held no key
+     */
+    abstract void rehash(int capacity, int[] newSlots);
+
+    private int freeSlot(int orgId, long idHigh, long idLow) {
+        int slot = MetricKey.hash(orgId, idHigh, idLow) & mask;
+        while (occupied[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final int[] oldOrgIds = orgIds;
+        final long[] oldIdHighs = idHighs;
+        final long[] oldIdLows = idLows;
+        final boolean[] oldOccupied = occupied;
+        allocate(oldOccupied.length * 2);
+        final int[] newSlots = new int[oldOccupied.length];
+        for (int i = 0; i < oldOccupied.length; i++) {
+            if (!oldOccupied[i]) {
+                newSlots[i] = -1;
+                continue;
+            }
+            final int slot = freeSlot(oldOrgIds[i], oldIdHighs[i], oldIdLows[i]);
+            orgIds[slot] = oldOrgIds[i];
+            idHighs[slot] = oldIdHighs[i];
+            idLows[slot] = oldIdLows[i];
+            occupied[slot] = true;
+            newSlots[i] = slot;
+        }
+        rehash(occupied.length, newSlots);
+    }
+
+    private void allocate(int capacity) {
+        orgIds = new int[capacity];
+        idHighs = new long[capacity];
+        idLows = new long[capacity];
+        occupied = new boolean[capacity];
+        mask = capacity - 1;
+    }
+}
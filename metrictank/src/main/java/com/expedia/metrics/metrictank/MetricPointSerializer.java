@@ -15,9 +15,13 @@
  */
 package com.expedia.metrics.metrictank;
 
+import com.expedia.metrics.MetricDataBuffer;
+import com.expedia.metrics.MetricDefinition;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.List;
 
 /**
  * This serializer reads and writes the Metrictank Kafka-mdm MetricPoint format
@@ -26,16 +30,19 @@ import java.nio.ByteOrder;
  */
 public class MetricPointSerializer {
     public static final int METRIC_POINT_BYTES = 32;
+    /**
+     * The size of a MetricPointWithoutOrg record, which omits the org id and is read with an org id from configuration
+     */
+    public static final int METRIC_POINT_WITHOUT_ORG_BYTES = 28;
+
+    private final MetricTankIdFactory idFactory = new MetricTankIdFactory();
 
     public void serialize(MetricPoint metricPoint, ByteBuffer buffer) throws IOException {
         if (buffer.capacity() - buffer.position() < METRIC_POINT_BYTES) {
             throw new IOException("Insufficient capacity to hold a MetricPoint");
         }
         buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.put(metricPoint.getKey().getId());
-        buffer.putDouble(metricPoint.getValue());
-        buffer.putInt((int)metricPoint.getTime());
-        buffer.putInt(metricPoint.getKey().getOrgId());
+        write(metricPoint, buffer, true);
     }
 
     public byte[] serialize(MetricPoint metricPoint) throws IOException {
@@ -44,21 +51,236 @@ public class MetricPointSerializer {
         return buffer.array();
     }
 
+    /**
+     * Writes the MetricPoint in the MetricPointWithoutOrg format
+     */
+    public void serializeWithoutOrg(MetricPoint metricPoint, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < METRIC_POINT_WITHOUT_ORG_BYTES) {
+            throw new IOException("Insufficient capacity to hold a MetricPointWithoutOrg");
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        write(metricPoint, buffer, false);
+    }
+
+    public byte[] serializeWithoutOrg(MetricPoint metricPoint) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(METRIC_POINT_WITHOUT_ORG_BYTES);
+        serializeWithoutOrg(metricPoint, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the MetricPoints back-to-back at the buffer's position, checking the buffer's capacity once
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serializeList(List<MetricPoint> metricPoints, ByteBuffer buffer) throws IOException {
+        return writeList(metricPoints, buffer, true);
+    }
+
+    /**
+     * Writes the MetricPoints back-to-back in the MetricPointWithoutOrg format at the buffer's position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining, in which case nothing is written
+     */
+    public int serializeListWithoutOrg(List<MetricPoint> metricPoints, ByteBuffer buffer) throws IOException {
+        return writeList(metricPoints, buffer, false);
+    }
+
+    /**
+     * Writes a MetricPoint record for each point of the MetricDataBuffer back-to-back at the buffer's position. The
+     * key of each record is the Metrictank key of the point's definition, which is memoized on a
+     * MetricTankMetricDefinition, so no MetricPoint or MetricKey is created per point.
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining or a definition has no key, in which
+     * case nothing is written
+     */
+    public int serialize(MetricDataBuffer points, ByteBuffer buffer) throws IOException {
+        return writeBuffer(points, buffer, true);
+    }
+
+    /**
+     * Writes a MetricPointWithoutOrg record for each point of the MetricDataBuffer back-to-back at the buffer's
+     * position
+     * @return the number of bytes written
+     * @throws IOException when the buffer does not have enough space remaining or a definition has no key, in which
+     * case nothing is written
+     * @see #serialize(MetricDataBuffer, ByteBuffer)
+     */
+    public int serializeWithoutOrg(MetricDataBuffer points, ByteBuffer buffer) throws IOException {
+        return writeBuffer(points, buffer, false);
+    }
+
     public MetricPoint deserialize(ByteBuffer buffer) throws IOException {
         if (buffer.capacity() - buffer.position() < METRIC_POINT_BYTES) {
             throw new IOException("Insufficient capacity to hold a MetricPoint");
         }
-        final byte[] id = new byte[16];
         buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.get(id);
+        final long idHigh = Long.reverseBytes(buffer.getLong());
+        final long idLow = Long.reverseBytes(buffer.getLong());
         final double value = buffer.getDouble();
         final long time = Integer.toUnsignedLong(buffer.getInt());
         final int orgId = buffer.getInt();
-        return new MetricPoint(new MetricKey(orgId, id), value, time);
+        return new MetricPoint(new MetricKey(orgId, idHigh, idLow), value, time);
+    }
+
+    /**
+     * Reads a MetricPointWithoutOrg record
+     * @param orgId the org id of the point
+     */
+    public MetricPoint deserializeWithoutOrg(ByteBuffer buffer, int orgId) throws IOException {
+        if (buffer.remaining() < METRIC_POINT_WITHOUT_ORG_BYTES) {
+            throw new IOException("Insufficient capacity to hold a MetricPointWithoutOrg");
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        final long idHigh = Long.reverseBytes(buffer.getLong());
+        final long idLow = Long.reverseBytes(buffer.getLong());
+        final double value = buffer.getDouble();
+        final long time = Integer.toUnsignedLong(buffer.getInt());
+        return new MetricPoint(new MetricKey(orgId, idHigh, idLow), value, time);
+    }
+
+    /**
+     * Reads back-to-back MetricPoint records from the buffer's position up to its limit and passes the fields of each
+     * record to the visitor. Nothing is allocated per record.
+     * @return the number of records read
+     * @throws IOException when the remaining bytes are not a whole number of records
+     */
+    public int deserialize(ByteBuffer buffer, MetricPointVisitor visitor) throws IOException {
+        return readList(buffer, METRIC_POINT_BYTES, 0, visitor);
+    }
+
+    /**
+     * Reads back-to-back MetricPointWithoutOrg records from the buffer's position up to its limit and passes the
+     * fields of each record to the visitor. Nothing is allocated per record.
+     * @param orgId the org id of every point
+     * @return the number of records read
+     * @throws IOException when the remaining bytes are not a whole number of records
+     */
+    public int deserializeWithoutOrg(ByteBuffer buffer, int orgId, MetricPointVisitor visitor) throws IOException {
+        return readList(buffer, METRIC_POINT_WITHOUT_ORG_BYTES, orgId, visitor);
+    }
+
+    /**
+     * Reads back-to-back MetricPoint records from the buffer's position up to its limit and adds the point of each
+     * record whose key is in the cache to the MetricDataBuffer. Records of series that are not in the cache are
+     * skipped, as Metrictank does until it has seen the series' MetricData.
+     * @return the number of points added
+     * @throws IOException when the remaining bytes are not a whole number of records
+     */
+    public int deserializeInto(ByteBuffer buffer, MetricDefinitionCache definitions, MetricDataBuffer result) throws IOException {
+        return readInto(buffer, METRIC_POINT_BYTES, 0, definitions, result);
+    }
+
+    /**
+     * Reads back-to-back MetricPointWithoutOrg records into the MetricDataBuffer
+     * @param orgId the org id of every point
+     * @return the number of points added
+     * @throws IOException when the remaining bytes are not a whole number of records
+     * @see #deserializeInto(ByteBuffer, MetricDefinitionCache, MetricDataBuffer)
+     */
+    public int deserializeWithoutOrgInto(ByteBuffer buffer, int orgId, MetricDefinitionCache definitions, MetricDataBuffer result) throws IOException {
+        return readInto(buffer, METRIC_POINT_WITHOUT_ORG_BYTES, orgId, definitions, result);
     }
 
     public MetricPoint deserialize(byte[] bytes) throws IOException {
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
         return deserialize(buffer);
     }
+
+    private static int writeList(List<MetricPoint> metricPoints, ByteBuffer buffer, boolean withOrg) throws IOException {
+        final int length = metricPoints.size() * (withOrg ? METRIC_POINT_BYTES : METRIC_POINT_WITHOUT_ORG_BYTES);
+        if (buffer.remaining() < length) {
+            throw new IOException("Insufficient capacity to hold " + metricPoints.size() + " MetricPoints");
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (final MetricPoint metricPoint : metricPoints) {
+            write(metricPoint, buffer, withOrg);
+        }
+        return length;
+    }
+
+    private int writeBuffer(MetricDataBuffer points, ByteBuffer buffer, boolean withOrg) throws IOException {
+        final int length = points.size() * (withOrg ? METRIC_POINT_BYTES : METRIC_POINT_WITHOUT_ORG_BYTES);
+        if (buffer.remaining() < length) {
+            throw new IOException("Insufficient capacity to hold " + points.size() + " MetricPoints");
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        final int start = buffer.position();
+        for (int i = 0; i < points.size(); i++) {
+            final MetricKey key;
+            try {
+                key = idFactory.getKey(points.getMetricDefinition(i));
+            } catch (IllegalArgumentException e) {
+                buffer.position(start);
+                throw new IOException("Unable to serialize MetricPoint", e);
+            }
+            write(key, points.getValue(i), points.getTimestamp(i), buffer, withOrg);
+        }
+        return length;
+    }
+
+    /**
+     * Writes a record to a little-endian buffer
+     */
+    private static void write(MetricPoint metricPoint, ByteBuffer buffer, boolean withOrg) {
+        write(metricPoint.getKey(), metricPoint.getValue(), metricPoint.getTime(), buffer, withOrg);
+    }
+
+    private static void write(MetricKey key, double value, long time, ByteBuffer buffer, boolean withOrg) {
+        // The id is a byte array, so write it big-endian regardless of the buffer order
+        buffer.putLong(Long.reverseBytes(key.getIdHigh()));
+        buffer.putLong(Long.reverseBytes(key.getIdLow()));
+        buffer.putDouble(value);
+        buffer.putInt((int)time);
+        if (withOrg) {
+            buffer.putInt(key.getOrgId());
+        }
+    }
+
+    /**
+     * @param orgId the org id of records without one
+     */
+    private static int readList(ByteBuffer buffer, int recordBytes, int orgId, MetricPointVisitor visitor) throws IOException {
+        if (buffer.remaining() % recordBytes != 0) {
+            throw new IOException("Buffer does not hold a whole number of MetricPoints");
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        final boolean withOrg = recordBytes == METRIC_POINT_BYTES;
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            // The id is a byte array, so read it big-endian regardless of the buffer order
+            final long idHigh = Long.reverseBytes(buffer.getLong());
+            final long idLow = Long.reverseBytes(buffer.getLong());
+            final double value = buffer.getDouble();
+            final long time = Integer.toUnsignedLong(buffer.getInt());
+            visitor.visit(withOrg ? buffer.getInt() : orgId, idHigh, idLow, value, time);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param orgId the org id of records without one
+     */
+    private static int readInto(ByteBuffer buffer, int recordBytes, int orgId, MetricDefinitionCache definitions, MetricDataBuffer result) throws IOException {
+        if (buffer.remaining() % recordBytes != 0) {
+            throw new IOException("Buffer does not hold a whole number of MetricPoints");
+        }
+        result.ensureCapacity(result.size() + buffer.remaining() / recordBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        final boolean withOrg = recordBytes == METRIC_POINT_BYTES;
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            final long idHigh = Long.reverseBytes(buffer.getLong());
+            final long idLow = Long.reverseBytes(buffer.getLong());
+            final double value = buffer.getDouble();
+            final long time = Integer.toUnsignedLong(buffer.getInt());
+            final MetricDefinition definition = definitions.get(withOrg ? buffer.getInt() : orgId, idHigh, idLow);
+            if (definition != null) {
+                result.add(definition, value, time);
+                count++;
+            }
+        }
+        return count;
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+/**
+ * Receives the fields of MetricPoint records as primitives, so that a stream of records can be read without
+ * allocating a MetricPoint, MetricKey or id array for each one.
+ *
+ * @see MetricPointSerializer#deserialize(java.nio.ByteBuffer, MetricPointVisitor)
+ */
+public interface MetricPointVisitor {
+    /**
+     * @param orgId the Metrictank org id
+     * @param idHigh the first 8 bytes of the 16 byte id, read big-endian
+     * @param idLow the last 8 bytes of the 16 byte id, read big-endian
+     * @param value the value of the point
+     * @param time the unsigned 32 bit timestamp of the point in seconds
+     */
+    void visit(int orgId, long idHigh, long idLow, double value, long time);
+}
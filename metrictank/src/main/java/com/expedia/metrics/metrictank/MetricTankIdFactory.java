@@ -17,6 +17,7 @@ package com.expedia.metrics.metrictank;
 
 import com.expedia.metrics.IdFactory;
 import com.expedia.metrics.MetricDefinition;
+import com.expedia.metrics.TagCollection;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -33,7 +34,25 @@ public class MetricTankIdFactory implements IdFactory {
         return getKey(metric).toString();
     }
     
+    /**
+     * The key of a MetricTankMetricDefinition is computed once and then memoized on the definition, so repeated
+     * calls for the same definition instance do not format tags or compute a digest. Only the key is memoized, as
+     * consumers keep a definition for every series they have seen.
+     */
     public MetricKey getKey(MetricDefinition metric) {
+        if (!(metric instanceof MetricTankMetricDefinition)) {
+            return createKey(metric);
+        }
+        final MetricTankMetricDefinition metricTankMetric = (MetricTankMetricDefinition) metric;
+        MetricKey key = metricTankMetric.getMetricKey();
+        if (key == null) {
+            key = createKey(metric);
+            metricTankMetric.setMetricKey(key);
+        }
+        return key;
+    }
+    
+    private MetricKey createKey(MetricDefinition metric) {
         final int orgId = MessagePackSerializer.getOrgId(metric);
         final String name = metric.getKey();
         if (name == null) {
@@ -42,8 +61,7 @@ public class MetricTankIdFactory implements IdFactory {
         final int interval = MessagePackSerializer.getInterval(metric);
         final String unit = MessagePackSerializer.getUnit(metric);
         final String mtype = MessagePackSerializer.getMtype(metric);
-        List<String> formattedTags = formatTags(metric.getTags().getKv());
-        return getKey(orgId, name, unit, mtype, interval, formattedTags);
+        return getKey(orgId, name, unit, mtype, interval, formatTags(metric.getTags()));
     }
     
     public String getId(int orgId, String name, String unit, String mtype, int interval, List<String> tags) {
@@ -75,25 +93,41 @@ public class MetricTankIdFactory implements IdFactory {
         List<String> result = new ArrayList<>(tags.size());
         
         for (Map.Entry<String, String> entry : tags.entrySet()) {
-            final String key = entry.getKey();
-            final String value = entry.getValue();
-            
-            // The unit tag is a special case where the spec allows the empty string as a value.
-            if ("unit".equals(key) && "".equals(value)) {
-                result.add(key + "=" + value);
-                continue;
-            }
-            
-            if (key == null || key.isEmpty() || key.contains("=") || key.contains(";") || key.contains("!")) {
-                throw new IllegalArgumentException("Metrictank does not support key: " + key);
-            }
-            if (value == null || value.isEmpty() || value.contains(";")) {
-                throw new IllegalArgumentException("Metrictank does not support value [" + value + "] for key " + key);
-            }
-            result.add(key + "=" + value);
+            result.add(formatTag(entry.getKey(), entry.getValue()));
         }
         
         Collections.sort(result);
         return result;
     }
+    
+    /**
+     * Formats tags read directly from the TagCollection's sorted arrays. The result must still be sorted because
+     * Metrictank orders the formatted "key=value" strings, which can differ from key order, e.g. "a.b=1" sorts
+     * before "a=1". As the input is nearly always already in that order the sort is a single pass.
+     */
+    public List<String> formatTags(TagCollection tags) {
+        List<String> result = new ArrayList<>(tags.kvSize());
+        
+        for (int i = 0; i < tags.kvSize(); i++) {
+            result.add(formatTag(tags.getKvKey(i), tags.getKvValue(i)));
+        }
+        
+        Collections.sort(result);
+        return result;
+    }
+    
+    private String formatTag(String key, String value) {
+        // The unit tag is a special case where the spec allows the empty string as a value.
+        if ("unit".equals(key) && "".equals(value)) {
+            return key + "=" + value;
+        }
+        
+        if (key == null || key.isEmpty() || key.contains("=") || key.contains(";") || key.contains("!")) {
+            throw new IllegalArgumentException("Metrictank does not support key: " + key);
+        }
+        if (value == null || value.isEmpty() || value.contains(";")) {
+            throw new IllegalArgumentException("Metrictank does not support value [" + value + "] for key " + key);
+        }
+        return key + "=" + value;
+    }
 }
@@ -17,7 +17,13 @@ package com.expedia.metrics.metrictank;
 
 import com.expedia.metrics.MetricDefinition;
 import com.expedia.metrics.TagCollection;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessageUnpacker;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public class MetricTankMetricDefinition extends MetricDefinition {
@@ -26,12 +32,34 @@ public class MetricTankMetricDefinition extends MetricDefinition {
     private final String unit;
     private final String mtype;
 
+    // Lazily computed by MetricTankIdFactory and MessagePackSerializer. All fields of these classes are final, so
+    // like String.hash a racy write is harmless: at worst another thread computes the same value again.
+    private MetricKey metricKey;
+    private MetricDataTemplate metricDataTemplate;
+
+    // The msgpack Tags array of a definition deserialized by MessagePackSerializer.deserializeLazily, or null when
+    // the tags were given up front. It is parsed into parsedTags on the first call to getTags.
+    private final ByteBuffer encodedTags;
+    private volatile TagCollection parsedTags;
+
     public MetricTankMetricDefinition(String key, int orgId, int interval, String unit, String mtype) {
         this(key, TagCollection.EMPTY, TagCollection.EMPTY, orgId, interval, unit, mtype);
     }
 
     public MetricTankMetricDefinition(String key, TagCollection tags, TagCollection meta, int orgId, int interval, String unit, String mtype) {
+        this(key, tags, meta, null, orgId, interval, unit, mtype);
+    }
+
+    /**
+     * Constructs a MetricTankMetricDefinition whose tags are parsed from the msgpack encoded array when first needed
+     */
+    MetricTankMetricDefinition(String key, ByteBuffer encodedTags, int orgId, int interval, String unit, String mtype) {
+        this(key, TagCollection.EMPTY, TagCollection.EMPTY, encodedTags, orgId, interval, unit, mtype);
+    }
+
+    private MetricTankMetricDefinition(String key, TagCollection tags, TagCollection meta, ByteBuffer encodedTags, int orgId, int interval, String unit, String mtype) {
         super(key, tags, meta);
+        this.encodedTags = encodedTags;
         this.orgId = orgId;
         this.interval = interval;
         if (unit == null) {
@@ -60,6 +88,51 @@ public class MetricTankMetricDefinition extends MetricDefinition {
         return mtype;
     }
 
+    /**
+     * @throws UncheckedIOException if the definition was deserialized lazily and its tags are malformed
+     */
+    @Override
+    public TagCollection getTags() {
+        if (encodedTags == null) {
+            return tags;
+        }
+        TagCollection result = parsedTags;
+        if (result == null) {
+            result = parseTags();
+            parsedTags = result;
+        }
+        return result;
+    }
+
+    private TagCollection parseTags() {
+        try {
+            final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(encodedTags.duplicate());
+            final TagCollection result = MessagePackSerializer.readTags(unpacker);
+            unpacker.close();
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (MessagePackException e) {
+            throw new UncheckedIOException(new IOException("Unable to deserialize Tags", e));
+        }
+    }
+
+    MetricKey getMetricKey() {
+        return metricKey;
+    }
+
+    void setMetricKey(MetricKey metricKey) {
+        this.metricKey = metricKey;
+    }
+
+    MetricDataTemplate getMetricDataTemplate() {
+        return metricDataTemplate;
+    }
+
+    void setMetricDataTemplate(MetricDataTemplate metricDataTemplate) {
+        this.metricDataTemplate = metricDataTemplate;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -85,7 +158,7 @@ public class MetricTankMetricDefinition extends MetricDefinition {
                 ", unit='" + unit + '\'' +
                 ", mtype='" + mtype + '\'' +
                 ", key='" + key + '\'' +
-                ", tags=" + tags +
+                ", tags=" + getTags() +
                 ", meta=" + meta +
                 '}';
     }
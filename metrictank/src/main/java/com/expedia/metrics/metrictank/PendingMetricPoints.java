@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricData;
+import com.expedia.metrics.MetricDefinition;
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A bounded holding area for MetricPoints whose definition is not known yet, e.g. after a consumer restarts and
+ * before the next MetricData of each series arrives. Points are parked in a ring of primitive arrays, with the
+ * points of each series linked in arrival order, and are released when the definition of their series arrives.
+ * <p>
+ * When the ring is full the oldest point is evicted to make room, and points that have been parked for longer than
+ * the maximum age are expired. Nothing is allocated per parked point, but the index of parked series grows with the
+ * number of distinct series.
+ * <p>
+ * All methods are synchronized.
+ */
+public final class PendingMetricPoints {
+    /**
+     * The bytes of heap taken by the ring for each point it can hold
+     */
+    public static final int BYTES_PER_POINT = Integer.BYTES * 3 + Long.BYTES * 3 + Double.BYTES + 1;
+
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final long maximumAgeSeconds;
+    private final Ticker ticker;
+    private final long startNanos;
+
+    private final int[] orgIds;
+    private final long[] idHighs;
+    private final long[] idLows;
+    private final double[] values;
+    private final long[] times;
+    private final int[] parkedAt;
+    // The next point of the same series, or NONE
+    private final int[] next;
+    // False for slots whose point was released, which stay in the ring until they reach its head
+    private final boolean[] live;
+    private final Series series = new Series();
+
+    private int head;
+    private int used;
+    private int size;
+
+    private long parkedCount;
+    private long releasedCount;
+    private long evictedCount;
+    private long expiredCount;
+
+    /**
+     * @param maximumPoints the maximum number of points to hold
+     * @param maximumBytes the maximum size of the ring, which holds at most maximumBytes / BYTES_PER_POINT points
+     * @param maximumAge the time after which a parked point is discarded
+     */
+    public PendingMetricPoints(int maximumPoints, long maximumBytes, Duration maximumAge) {
+        this(maximumPoints, maximumBytes, maximumAge, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker the time source, e.g. a fake ticker for tests
+     */
+    public PendingMetricPoints(int maximumPoints, long maximumBytes, Duration maximumAge, Ticker ticker) {
+        if (maximumPoints <= 0) {
+            throw new IllegalArgumentException("maximumPoints must be positive");
+        }
+        if (maximumBytes < BYTES_PER_POINT) {
+            throw new IllegalArgumentException("maximumBytes must be at least " + BYTES_PER_POINT);
+        }
+        if (maximumAge == null || maximumAge.isNegative()) {
+            throw new IllegalArgumentException("maximumAge must be zero or positive");
+        }
+        if (ticker == null) {
+            throw new IllegalArgumentException("ticker is required");
+        }
+        this.capacity = (int) Math.min(maximumPoints, maximumBytes / BYTES_PER_POINT);
+        this.maximumAgeSeconds = maximumAge.getSeconds();
+        this.ticker = ticker;
+        this.startNanos = ticker.read();
+        orgIds = new int[capacity];
+        idHighs = new long[capacity];
+        idLows = new long[capacity];
+        values = new double[capacity];
+        times = new long[capacity];
+        parkedAt = new int[capacity];
+        next = new int[capacity];
+        live = new boolean[capacity];
+    }
+
+    public void park(MetricPoint point) {
+        final MetricKey key = point.getKey();
+        park(key.getOrgId(), key.getIdHigh(), key.getIdLow(), point.getValue(), point.getTime());
+    }
+
+    /**
+     * Parks a point, evicting the oldest point if the ring is full
+     */
+    public synchronized void park(int orgId, long idHigh, long idLow, double value, long time) {
+        final int now = now();
+        expire(now);
+        if (used == capacity) {
+            evictOldest();
+        }
+        final int slot = (head + used) % capacity;
+        used++;
+        size++;
+        parkedCount++;
+        orgIds[slot] = orgId;
+        idHighs[slot] = idHigh;
+        idLows[slot] = idLow;
+        values[slot] = value;
+        times[slot] = time;
+        parkedAt[slot] = now;
+        next[slot] = NONE;
+        live[slot] = true;
+        int entry = series.find(orgId, idHigh, idLow);
+        if (entry < 0) {
+            entry = series.add(orgId, idHigh, idLow);
+            series.firsts[entry] = slot;
+        } else {
+            next[series.lasts[entry]] = slot;
+        }
+        series.lasts[entry] = slot;
+    }
+
+    /**
+     * Removes the parked points of a series and passes them to the consumer in the order they were parked. The
+     * consumer is called while this object is locked, so it must not call back into it.
+     * @return the number of points released
+     */
+    public synchronized int release(MetricKey key, MetricDefinition definition, Consumer<MetricData> consumer) {
+        expire(now());
+        final int entry = series.find(key.getOrgId(), key.getIdHigh(), key.getIdLow());
+        if (entry < 0) {
+            return 0;
+        }
+        int slot = series.firsts[entry];
+        series.remove(entry);
+        int count = 0;
+        while (slot != NONE) {
+            live[slot] = false;
+            size--;
+            releasedCount++;
+            count++;
+            consumer.accept(new MetricData(definition, values[slot], times[slot]));
+            slot = next[slot];
+        }
+        skipReleased();
+        return count;
+    }
+
+    /**
+     * @return the number of points currently parked
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the total number of points that have been parked
+     */
+    public synchronized long getParkedCount() {
+        return parkedCount;
+    }
+
+    /**
+     * @return the total number of points that have been released to a consumer
+     */
+    public synchronized long getReleasedCount() {
+        return releasedCount;
+    }
+
+    /**
+     * @return the total number of points that were discarded to make room for newer points
+     */
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * @return the total number of points that were discarded because they exceeded the maximum age
+     */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(ticker.read() - startNanos);
+    }
+
+    private void expire(int now) {
+        skipReleased();
+        while (used > 0 && now - parkedAt[head] > maximumAgeSeconds) {
+            removeOldest();
+            expiredCount++;
+            skipReleased();
+        }
+    }
+
+    private void evictOldest() {
+        skipReleased();
+        if (used == capacity) {
+            removeOldest();
+            evictedCount++;
+        }
+    }
+
+    /**
+     * Advances the head of the ring past the slots of released points
+     */
+    private void skipReleased() {
+        while (used > 0 && !live[head]) {
+            head = (head + 1) % capacity;
+            used--;
+        }
+    }
+
+    /**
+     * Removes the live point at the head of the ring, which is the first point of its series
+     */
+    private void removeOldest() {
+        final int slot = head;
+        final int entry = series.find(orgIds[slot], idHighs[slot], idLows[slot]);
+        if (next[slot] == NONE) {
+            series.remove(entry);
+        } else {
+            series.firsts[entry] = next[slot];
+        }
+        live[slot] = false;
+        size--;
+        head = (head + 1) % capacity;
+        used--;
+    }
+
+    /**
+     * Index from each series to the first and last of its parked points
+     */
+    private static final class Series extends MetricKeyTable {
+        private int[] firsts = new int[capacity()];
+        private int[] lasts = new int[capacity()];
+
+        @Override
+        void move(int from, int to) {
+            firsts[to] = firsts[from];
+            lasts[to] = lasts[from];
+        }
+
+        @Override
+        void clear(int slot) {
+            // Nothing to release
+        }
+
+        @Override
+        void rehash(int capacity, int[] newSlots) {
+            final int[] newFirsts = new int[capacity];
+            final int[] newLasts = new int[capacity];
+            for (int i = 0; i < newSlots.length; i++) {
+                final int slot = newSlots[i];
+                if (slot >= 0) {
+                    newFirsts[slot] = firsts[i];
+                    newLasts[slot] = lasts[i];
+                }
+            }
+            firsts = newFirsts;
+            lasts = newLasts;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricDefinition;
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A bounded MetricDefinitionCache that holds its keys as primitives in an open addressing table, so an entry costs a
+ * few array elements instead of the node and key objects of a Guava Cache. The garbage collector sees a handful of
+ * large arrays no matter how many series are cached.
+ * <p>
+ * Entries expire when they have not been read or written for the expireAfterAccess duration, measured in whole
+ * seconds, so an entry may outlive the duration by up to a second. Expired entries are removed when they are read,
+ * a few at a time by put, and all at once by cleanUp. When the cache is full, put evicts an entry using the CLOCK
+ * algorithm: entries that have been read since the clock hand last passed them get a second chance.
+ * <p>
+ * All methods are synchronized.
+ */
+public final class PrimitiveMetricDefinitionCache implements MetricDefinitionCache {
+    // The number of slots that each put checks for expired entries
+    private static final int EXPIRY_SLOTS_PER_PUT = 2;
+
+    private final int maximumSize;
+    private final long expireAfterAccessSeconds;
+    private final Ticker ticker;
+    private final long startNanos;
+    private final Entries entries = new Entries();
+    private int clockHand;
+    private int expiryCursor;
+
+    public PrimitiveMetricDefinitionCache(int maximumSize, Duration expireAfterAccess) {
+        this(maximumSize, expireAfterAccess, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker the time source, e.g. a fake ticker for tests
+     */
+    public PrimitiveMetricDefinitionCache(int maximumSize, Duration expireAfterAccess, Ticker ticker) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        if (expireAfterAccess == null || expireAfterAccess.isNegative()) {
+            throw new IllegalArgumentException("expireAfterAccess must be zero or positive");
+        }
+        if (ticker == null) {
+            throw new IllegalArgumentException("ticker is required");
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterAccessSeconds = expireAfterAccess.getSeconds();
+        this.ticker = ticker;
+        this.startNanos = ticker.read();
+    }
+
+    @Override
+    public synchronized MetricDefinition get(int orgId, long idHigh, long idLow) {
+        final int slot = entries.find(orgId, idHigh, idLow);
+        if (slot < 0) {
+            return null;
+        }
+        final int now = now();
+        if (isExpired(slot, now)) {
+            entries.remove(slot);
+            return null;
+        }
+        entries.accessTimes[slot] = now;
+        entries.referenced[slot] = true;
+        return entries.definitions[slot];
+    }
+
+    @Override
+    public synchronized void put(MetricKey key, MetricDefinition definition) {
+        if (key == null || definition == null) {
+            throw new IllegalArgumentException("key and definition are required");
+        }
+        final int now = now();
+        int slot = entries.find(key.getOrgId(), key.getIdHigh(), key.getIdLow());
+        if (slot < 0) {
+            expire(now, EXPIRY_SLOTS_PER_PUT);
+            if (entries.size() >= maximumSize) {
+                evict(now);
+            }
+            slot = entries.add(key.getOrgId(), key.getIdHigh(), key.getIdLow());
+            entries.referenced[slot] = false;
+        }
+        entries.definitions[slot] = definition;
+        entries.accessTimes[slot] = now;
+    }
+
+    /**
+     * Passes each entry that has not expired to the action, without counting as an access
+     */
+    @Override
+    public synchronized void forEach(BiConsumer<MetricKey, MetricDefinition> action) {
+        final int now = now();
+        for (int slot = 0; slot < entries.capacity(); slot++) {
+            if (entries.isOccupied(slot) && !isExpired(slot, now)) {
+                action.accept(entries.getKey(slot), entries.definitions[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries, which may include expired entries that have not been removed yet
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all expired entries
+     */
+    public synchronized void cleanUp() {
+        expire(now(), entries.capacity());
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(ticker.read() - startNanos);
+    }
+
+    private boolean isExpired(int slot, int now) {
+        return now - entries.accessTimes[slot] > expireAfterAccessSeconds;
+    }
+
+    /**
+     * Removes the expired entries in the next slots after the expiry cursor
+     */
+    private void expire(int now, int slots) {
+        for (int i = 0; i < slots; i++) {
+            expiryCursor = (expiryCursor + 1) & (entries.capacity() - 1);
+            // Removing an entry can move the next entry into its slot
+            while (entries.isOccupied(expiryCursor) && isExpired(expiryCursor, now)) {
+                entries.remove(expiryCursor);
+            }
+        }
+    }
+
+    /**
+     * Advances the clock hand, clearing the referenced flags it passes, until it finds an entry to remove
+     */
+    private void evict(int now) {
+        final int mask = entries.capacity() - 1;
+        while (true) {
+            clockHand = (clockHand + 1) & mask;
+            if (!entries.isOccupied(clockHand)) {
+                continue;
+            }
+            if (entries.referenced[clockHand] && !isExpired(clockHand, now)) {
+                entries.referenced[clockHand] = false;
+            } else {
+                entries.remove(clockHand);
+                return;
+            }
+        }
+    }
+
+    private static final class Entries extends MetricKeyTable {
+        private MetricDefinition[] definitions = new MetricDefinition[capacity()];
+        private int[] accessTimes = new int[capacity()];
+        private boolean[] referenced = new boolean[capacity()];
+
+        @Override
+        void move(int from, int to) {
+            definitions[to] = definitions[from];
+            accessTimes[to] = accessTimes[from];
+            referenced[to] = referenced[from];
+        }
+
+        @Override
+        void clear(int slot) {
+            definitions[slot] = null;
+        }
+
+        @Override
+        void rehash(int capacity, int[] newSlots) {
+            final MetricDefinition[] newDefinitions = new MetricDefinition[capacity];
+            final int[] newAccessTimes = new int[capacity];
+            final boolean[] newReferenced = new boolean[capacity];
+            for (int i = 0; i < newSlots.length; i++) {
+                final int slot = newSlots[i];
+                if (slot >= 0) {
+                    newDefinitions[slot] = definitions[i];
+                    newAccessTimes[slot] = accessTimes[i];
+                    newReferenced[slot] = referenced[i];
+                }
+            }
+            definitions = newDefinitions;
+            accessTimes = newAccessTimes;
+            referenced = newReferenced;
+        }
+    }
+}
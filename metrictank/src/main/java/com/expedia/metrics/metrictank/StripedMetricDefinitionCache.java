@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank;
+
+import com.expedia.metrics.MetricDefinition;
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+/**
+ * A bounded MetricDefinitionCache for many threads, split into segments that are each a
+ * PrimitiveMetricDefinitionCache with its own lock. A key always maps to the same segment, chosen by the high bits
+ * of its hash, so threads working on different series rarely wait for each other and every series is cached once.
+ * <p>
+ * The maximum size is divided evenly between the segments, and each segment evicts and expires its own entries, so
+ * the cache may evict before it holds maximumSize entries when the keys are unevenly spread.
+ */
+public final class StripedMetricDefinitionCache implements MetricDefinitionCache {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MAXIMUM_CONCURRENCY_LEVEL = 1 << 16;
+
+    private final PrimitiveMetricDefinitionCache[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    public StripedMetricDefinitionCache(int maximumSize, Duration expireAfterAccess) {
+        this(maximumSize, expireAfterAccess, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param concurrencyLevel the expected number of threads using the cache, rounded up to a power of two segments
+     */
+    public StripedMetricDefinitionCache(int maximumSize, Duration expireAfterAccess, int concurrencyLevel) {
+        this(maximumSize, expireAfterAccess, concurrencyLevel, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker the time source, e.g. a fake ticker for tests
+     */
+    public StripedMetricDefinitionCache(int maximumSize, Duration expireAfterAccess, int concurrencyLevel, Ticker ticker) {
+        if (concurrencyLevel <= 0 || concurrencyLevel > MAXIMUM_CONCURRENCY_LEVEL) {
+            throw new IllegalArgumentException("concurrencyLevel must be between 1 and " + MAXIMUM_CONCURRENCY_LEVEL);
+        }
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel) {
+            segmentCount <<= 1;
+        }
+        final int segmentSize = (int) ((maximumSize + (long) segmentCount - 1) / segmentCount);
+        segments = new PrimitiveMetricDefinitionCache[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new PrimitiveMetricDefinitionCache(segmentSize, expireAfterAccess, ticker);
+        }
+        // The segment tables index on the low bits of the hash, so the segment is chosen by the high bits.
+        // With a single segment the shift is 32, which Java treats as 0, and the mask is 0.
+        segmentShift = Integer.SIZE - Integer.numberOfTrailingZeros(segmentCount);
+        segmentMask = segmentCount - 1;
+    }
+
+    @Override
+    public MetricDefinition get(int orgId, long idHigh, long idLow) {
+        return segmentFor(orgId, idHigh, idLow).get(orgId, idHigh, idLow);
+    }
+
+    @Override
+    public void put(MetricKey key, MetricDefinition definition) {
+        if (key == null) {
+            throw new IllegalArgumentException("key and definition are required");
+        }
+        segmentFor(key.getOrgId(), key.getIdHigh(), key.getIdLow()).put(key, definition);
+    }
+
+    /**
+     * Passes each entry that has not expired to the action, one segment at a time, so the entries are not a
+     * consistent snapshot of the whole cache when other threads are writing to it
+     */
+    @Override
+    public void forEach(BiConsumer<MetricKey, MetricDefinition> action) {
+        for (PrimitiveMetricDefinitionCache segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    /**
+     * @return the number of entries, which may include expired entries that have not been removed yet
+     */
+    public int size() {
+        int size = 0;
+        for (PrimitiveMetricDefinitionCache segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all expired entries
+     */
+    public void cleanUp() {
+        for (PrimitiveMetricDefinitionCache segment : segments) {
+            segment.cleanUp();
+        }
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    private PrimitiveMetricDefinitionCache segmentFor(int orgId, long idHigh, long idLow) {
+        return segments[(MetricKey.hash(orgId, idHigh, idLow) >>> segmentShift) & segmentMask];
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import com.expedia.metrics.{MetricData, TagCollection}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class JsonMetricDataDeserializerTest extends FunSpec with Matchers with GivenWhenThen {
+  private val deserializer = new JsonMetricDataDeserializer()
+
+  private def bytes(json: String) = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8))
+
+  private val metricJson = """{"id":"1.d9c98f4457b6aa06a08e401b0fbc977f","org_id":1,"name":"a","interval":60,"value":0.5,"unit":"P","time":1533174724,"mtype":"gauge","tags":["tag=value","eq=a=b"]}"""
+  private val metric = new MetricData(new MetricTankMetricDefinition("a",
+    new TagCollection(Map("tag" -> "value", "eq" -> "a=b").asJava), TagCollection.EMPTY, 1, 60, "P", "gauge"),
+    0.5, 1533174724L)
+
+  describe("JsonMetricDataDeserializer") {
+    it("should deserialize a MetricData") {
+      deserializer.deserialize(bytes(metricJson)) should be(metric)
+    }
+
+    it("should skip unknown fields and accept null tags") {
+      Given("a MetricData with an unknown nested field and null tags")
+      val json = """{"org_id":2,"extra":{"a":[1,{"b":2}]},"name":"b","interval":10,"value":3,"unit":"","time":5,"mtype":"rate","tags":null}"""
+
+      When("deserializing")
+      val m = deserializer.deserialize(bytes(json))
+
+      Then("the known fields should be read")
+      m should be(new MetricData(new MetricTankMetricDefinition("b", TagCollection.EMPTY, TagCollection.EMPTY, 2, 10, "", "rate"), 3, 5))
+    }
+
+    it("should read an array one MetricData at a time") {
+      Given("a JSON array of MetricData")
+      val json = "[" + metricJson + "," + metricJson + "]"
+
+      When("reading the array")
+      val array = deserializer.deserializeArray(bytes(json))
+
+      Then("each MetricData should be read in turn")
+      array.size should be(-1)
+      array.hasNext should be(true)
+      array.next() should be(metric)
+      array.hasNext should be(true)
+      array.next() should be(metric)
+      array.hasNext should be(false)
+    }
+
+    it("should be used by MDMDeserializer for MetricDataArrayJson messages") {
+      val message = ByteBuffer.wrap(0.toByte +: ("[" + metricJson + "]").getBytes(StandardCharsets.UTF_8))
+      val mdmData = new MDMDeserializer().deserialize(message)
+      mdmData.isMetricDataArray should be(true)
+      mdmData.getMetricDataArray.next() should be(metric)
+    }
+
+    it("should reject a MetricData without required fields") {
+      an [IOException] should be thrownBy deserializer.deserialize(bytes("""{"name":"a"}"""))
+    }
+
+    it("should reject an array holding something other than MetricData") {
+      an [IOException] should be thrownBy deserializer.deserializeArray(bytes("[1]")).hasNext
+    }
+  }
+}
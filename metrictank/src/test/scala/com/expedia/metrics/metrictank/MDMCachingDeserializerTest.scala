@@ -16,10 +16,16 @@
 package com.expedia.metrics.metrictank
 
 import java.nio.ByteBuffer
-import java.util.Base64
+import java.time.Duration
+import java.util.concurrent.Executors
+import java.util.{Arrays, Base64}
+import java.util.function.{BiConsumer, Consumer}
 
+import com.expedia.metrics.{MetricData, MetricDataBuffer, MetricDefinition}
 import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
 
+import scala.collection.mutable.ArrayBuffer
+
 class MDMCachingDeserializerTest extends FunSpec with Matchers with GivenWhenThen {
   it("should return null for a MetricPoint with an unseen id") {
     Given("a serialized metricpoint")
@@ -48,5 +54,105 @@ class MDMCachingDeserializerTest extends FunSpec with Matchers with GivenWhenThe
       metricPoint should not be null
       metricPoint.getMetricDefinition should be(metricData.getMetricDefinition)
     }
+
+    it("should deserialise a MetricPoint using a PrimitiveMetricDefinitionCache") {
+      Given("a deserializer with a primitive cache and a serialized metric data and metricpoint with the same id")
+      val deserializer = new MDMCachingDeserializer(new PrimitiveMetricDefinitionCache(100, Duration.ofHours(1)))
+      val metricDataBytes = Base64.getDecoder.decode("iaJJZNkiMS5kOWM5OGY0NDU3YjZhYTA2YTA4ZTQwMWIwZmJjOTc3ZqVPcmdJZAGkTmFtZaFhqEludGVydmFsPKVWYWx1Zcs/4KWm+PMheaRVbml0oVCkVGltZdMAAAAAW2JjxKVNdHlwZaVnYXVnZaRUYWdzkA==")
+      val metricPointBytes = Base64.getDecoder.decode("AtnJj0RXtqoGoI5AGw+8l3+sVCYs2tjjP+JjYlsBAAAA")
+
+      When("deserialising the metric data and then the metric point")
+      val metricData = deserializer.deserialize(ByteBuffer.wrap(metricDataBytes))
+      val metricPoint = deserializer.deserialize(ByteBuffer.wrap(metricPointBytes))
+
+      Then("the metric point is mapped to the metric definition from the metric data")
+      metricPoint should not be null
+      metricPoint.getMetricDefinition should be theSameInstanceAs metricData.getMetricDefinition
+    }
+
+    it("should cache the definition of a MetricData once") {
+      Given("a deserializer with a cache that counts puts")
+      val primitive = new PrimitiveMetricDefinitionCache(100, Duration.ofHours(1))
+      var puts = 0
+      val counting = new MetricDefinitionCache {
+        override def get(orgId: Int, idHigh: Long, idLow: Long): MetricDefinition = primitive.get(orgId, idHigh, idLow)
+        override def put(key: MetricKey, definition: MetricDefinition): Unit = {
+          puts += 1
+          primitive.put(key, definition)
+        }
+        override def forEach(action: BiConsumer[MetricKey, MetricDefinition]): Unit = primitive.forEach(action)
+      }
+      val deserializer = new MDMCachingDeserializer(counting)
+      val metricDataBytes = Base64.getDecoder.decode("iaJJZNkiMS5kOWM5OGY0NDU3YjZhYTA2YTA4ZTQwMWIwZmJjOTc3ZqVPcmdJZAGkTmFtZaFhqEludGVydmFsPKVWYWx1Zcs/4KWm+PMheaRVbml0oVCkVGltZdMAAAAAW2JjxKVNdHlwZaVnYXVnZaRUYWdzkA==")
+
+      When("deserialising the metric data")
+      deserializer.deserialize(ByteBuffer.wrap(metricDataBytes)) should not be null
+
+      Then("its definition should be put into the cache once")
+      puts should be(1)
+    }
+
+    it("should release parked MetricPoints when the MetricData arrives") {
+      Given("a deserializer with pending metric points and a metricpoint that arrives before its metric data")
+      val pending = new PendingMetricPoints(100, 1 << 20, Duration.ofMinutes(10))
+      val deserializer = new MDMCachingDeserializer(new PrimitiveMetricDefinitionCache(100, Duration.ofHours(1)), pending)
+      val metricDataBytes = Base64.getDecoder.decode("iaJJZNkiMS5kOWM5OGY0NDU3YjZhYTA2YTA4ZTQwMWIwZmJjOTc3ZqVPcmdJZAGkTmFtZaFhqEludGVydmFsPKVWYWx1Zcs/4KWm+PMheaRVbml0oVCkVGltZdMAAAAAW2JjxKVNdHlwZaVnYXVnZaRUYWdzkA==")
+      val metricPointBytes = Base64.getDecoder.decode("AtnJj0RXtqoGoI5AGw+8l3+sVCYs2tjjP+JjYlsBAAAA")
+      val received = ArrayBuffer[MetricData]()
+      val consumer = new Consumer[MetricData] {
+        override def accept(m: MetricData): Unit = received += m
+      }
+
+      When("deserialising the metric point and then the metric data")
+      val pointCount = deserializer.deserialize(ByteBuffer.wrap(metricPointBytes), consumer)
+      val dataCount = deserializer.deserialize(ByteBuffer.wrap(metricDataBytes), consumer)
+
+      Then("the metric point is released before the metric data")
+      pointCount should be(0)
+      dataCount should be(2)
+      received should have size 2
+      received(0).getMetricDefinition should be theSameInstanceAs received(1).getMetricDefinition
+      pending.getParkedCount should be(1)
+      pending.getReleasedCount should be(1)
+    }
+
+    it("should deserialise a batch of buffers in order") {
+      Given("a batch holding a metricpoint before its metric data, then the metric data and another metricpoint")
+      val pending = new PendingMetricPoints(100, 1 << 20, Duration.ofMinutes(10))
+      val deserializer = new MDMCachingDeserializer(new PrimitiveMetricDefinitionCache(100, Duration.ofHours(1)), pending)
+      val metricDataBytes = Base64.getDecoder.decode("iaJJZNkiMS5kOWM5OGY0NDU3YjZhYTA2YTA4ZTQwMWIwZmJjOTc3ZqVPcmdJZAGkTmFtZaFhqEludGVydmFsPKVWYWx1Zcs/4KWm+PMheaRVbml0oVCkVGltZdMAAAAAW2JjxKVNdHlwZaVnYXVnZaRUYWdzkA==")
+      val metricPointBytes = Base64.getDecoder.decode("AtnJj0RXtqoGoI5AGw+8l3+sVCYs2tjjP+JjYlsBAAAA")
+      val buffers = Arrays.asList(ByteBuffer.wrap(metricPointBytes), ByteBuffer.wrap(metricDataBytes), ByteBuffer.wrap(metricPointBytes))
+      val result = new MetricDataBuffer()
+      val executor = Executors.newFixedThreadPool(2)
+
+      When("deserialising the batch")
+      val count = try deserializer.deserialize(buffers, result, executor) finally executor.shutdown()
+
+      Then("the parked metric point, the metric data and the resolved metric point are added in order")
+      count should be(3)
+      result.size should be(3)
+      result.getMetricData(1) should be(new MDMDeserializer().deserialize(ByteBuffer.wrap(metricDataBytes)).getMetricData)
+      result.getMetricDefinition(0) should be theSameInstanceAs result.getMetricDefinition(1)
+      result.getMetricDefinition(2) should be theSameInstanceAs result.getMetricDefinition(1)
+      pending.getParkedCount should be(1)
+    }
+
+    it("should add nothing when a buffer in the batch can't be deserialised") {
+      Given("a batch holding a metric data and a truncated metricpoint")
+      val deserializer = new MDMCachingDeserializer()
+      val metricDataBytes = Base64.getDecoder.decode("iaJJZNkiMS5kOWM5OGY0NDU3YjZhYTA2YTA4ZTQwMWIwZmJjOTc3ZqVPcmdJZAGkTmFtZaFhqEludGVydmFsPKVWYWx1Zcs/4KWm+PMheaRVbml0oVCkVGltZdMAAAAAW2JjxKVNdHlwZaVnYXVnZaRUYWdzkA==")
+      val metricPointBytes = Base64.getDecoder.decode("AtnJj0RXtqoGoI5AGw+8l3+sVCYs2tjjP+JjYlsBAAAA")
+      val buffers = Arrays.asList(ByteBuffer.wrap(metricDataBytes), ByteBuffer.wrap(Arrays.copyOf(metricPointBytes, 10)))
+      val result = new MetricDataBuffer()
+
+      When("deserialising the batch")
+      Then("an IOException is thrown")
+      an[java.io.IOException] should be thrownBy deserializer.deserialize(buffers, result)
+
+      And("nothing is added to the result or the cache")
+      result.size should be(0)
+      deserializer.deserialize(ByteBuffer.wrap(metricPointBytes)) should be(null)
+    }
   }
 }
@@ -17,10 +17,13 @@ package com.expedia.metrics.metrictank
 
 import java.io.IOException
 import java.nio.ByteBuffer
-import java.util.Base64
+import java.util.{Base64, NoSuchElementException}
 
+import com.expedia.metrics.{MetricData, TagCollection}
 import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
 
+import scala.collection.JavaConverters._
+
 class MDMDeserializerTest extends FunSpec with Matchers with GivenWhenThen {
   describe("MDMDeserializer") {
 
@@ -50,6 +53,40 @@ class MDMDeserializerTest extends FunSpec with Matchers with GivenWhenThen {
       Then("IOException is thrown")
     }
 
+    it("should deserialize a MetricDataArrayMsgp one MetricData at a time") {
+      Given("a MetricDataArrayMsgp message")
+      val definition = new MetricTankMetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY, 1, 60, "P", "gauge")
+      val metrics = (0 until 20).map(i => new MetricData(definition, i, 1533174724L + i)).asJava
+      val bytes = new MDMSerializer().serializeList(metrics)
+      bytes(0) should be(1)
+
+      When("deserializing")
+      val mdmData = new MDMDeserializer().deserialize(ByteBuffer.wrap(bytes))
+
+      Then("the MetricData should be read in order")
+      mdmData.isMetricDataArray should be(true)
+      val array = mdmData.getMetricDataArray
+      array.size should be(20)
+      val read = Iterator.continually(array).takeWhile(_.hasNext).map(_.next()).toList
+      read should be(metrics.asScala.toList)
+      array.hasNext should be(false)
+      an [NoSuchElementException] should be thrownBy array.next()
+    }
+
+    it("should deserialize a MetricPointWithoutOrg with the configured org id") {
+      Given("a MetricPointWithoutOrg message")
+      val bytes = Base64.getDecoder.decode("A2JEqaiQ8IzCHmeWl9rOPKoAAAAAAAAAAJG/kVs=")
+      bytes.length should be(29)
+
+      When("deserializing with org id 3")
+      val mp = new MDMDeserializer(3).deserialize(ByteBuffer.wrap(bytes))
+
+      Then("the point should have org id 3")
+      mp.isMetricPoint should be(true)
+      mp.getMetricPoint.getKey.getOrgId should be(3)
+      mp.getMetricPoint.getTime should be(1536278417L)
+    }
+
     it("should fail deserialization when byte array represents an unknown format") {
       Given("bytes array representing unknown Metric Point format")
       val bytes = Base64.getDecoder.decode("BGJEqaiQ8IzCHmeWl9rOPKoAAAAAAAAAAJG/kVsBAAAA")
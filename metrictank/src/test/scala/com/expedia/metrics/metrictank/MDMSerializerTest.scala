@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import java.nio.{ByteBuffer, ByteOrder}
+import java.time.Duration
+import java.util.Collections
+import java.util.concurrent.TimeUnit
+
+import com.expedia.metrics.{MetricData, TagCollection}
+import com.google.common.base.Ticker
+import com.google.common.cache.CacheBuilder
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class MDMSerializerTest extends FunSpec with Matchers with GivenWhenThen {
+  private val definition = new MetricTankMetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY, 1, 60, "P", "gauge")
+  private val metric = new MetricData(definition, 0.5202212202357678, 1533174724L)
+
+  describe("MDMSerializer") {
+    it("should send the first MetricData of a series in full and later ones as MetricPoints") {
+      Given("a serializer")
+      val serializer = new MDMSerializer()
+
+      When("serializing two MetricData of the same series")
+      val first = serializer.serialize(metric)
+      val second = serializer.serialize(new MetricData(definition, 2.5, 1533174784L))
+
+      Then("the first should be a full MetricData and the second a MetricPoint")
+      first should be(new MessagePackSerializer().serialize(metric))
+      second.length should be(33)
+      second(0) should be(2)
+
+      And("an MDMCachingDeserializer should read both")
+      val deserializer = new MDMCachingDeserializer()
+      deserializer.deserialize(ByteBuffer.wrap(first)) should be(metric)
+      deserializer.deserialize(ByteBuffer.wrap(second)) should be(new MetricData(definition, 2.5, 1533174784L))
+    }
+
+    it("should send the MetricData in full again after the resend interval") {
+      Given("a serializer with a resend interval of one minute")
+      var nanos = 0L
+      val ticker = new Ticker {
+        override def read(): Long = nanos
+      }
+      val serializer = new MDMSerializer(CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .ticker(ticker)
+        .build[MetricKey, java.lang.Boolean]())
+      serializer.serialize(metric)
+      serializer.isSent(definition) should be(true)
+
+      When("the interval passes")
+      nanos += TimeUnit.MINUTES.toNanos(2)
+
+      Then("the MetricData should be sent in full")
+      serializer.isSent(definition) should be(false)
+      serializer.serialize(metric) should be(new MessagePackSerializer().serialize(metric))
+    }
+
+    it("should write MetricPoint messages into a ByteBuffer") {
+      Given("a serializer that has sent a series")
+      val serializer = new MDMSerializer(Duration.ofHours(1))
+      serializer.serialize(metric)
+      val buffer = ByteBuffer.allocate(40)
+
+      When("serializing the series into a ByteBuffer")
+      val length = serializer.serialize(metric, buffer)
+
+      Then("a MetricPoint message should be written")
+      length should be(33)
+      buffer.position should be(33)
+      buffer.get(0) should be(2)
+    }
+
+    it("should serialize a list as a MetricDataArrayMsgp message") {
+      Given("a serializer")
+      val serializer = new MDMSerializer()
+
+      When("serializing a list")
+      val bytes = serializer.serializeList(Collections.singletonList(metric))
+
+      Then("the message should hold the msgpack array and the series should be sent")
+      bytes(0) should be(1)
+      bytes.drop(1) should be(new MessagePackSerializer().serializeList(Collections.singletonList(metric)))
+      serializer.isSent(definition) should be(true)
+    }
+
+    it("should write a MetricDataArrayMsgp message into a little-endian ByteBuffer") {
+      Given("a serializer, a list of 20 MetricData and a little-endian buffer")
+      val serializer = new MDMSerializer()
+      val many = (1 to 20).map(i => new MetricData(definition, i, 1533174724L + i)).asJava
+      val buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN)
+
+      When("serializing the list into the buffer")
+      val length = serializer.serializeList(many, buffer)
+
+      Then("the message should match the one serialized to an array")
+      buffer.array.take(length) should be(serializer.serializeList(many))
+    }
+
+    it("should write MetricPointWithoutOrg messages for the configured org") {
+      Given("a serializer for org 1 that has sent a series")
+      val serializer = new MDMSerializer(Duration.ofHours(1), 1)
+      val first = serializer.serialize(metric)
+
+      When("serializing the series again")
+      val second = serializer.serialize(new MetricData(definition, 2.5, 1533174784L))
+
+      Then("a MetricPointWithoutOrg message should be written and read with the consumer's org id")
+      second.length should be(29)
+      second(0) should be(3)
+      val deserializer = new MDMCachingDeserializer(new PrimitiveMetricDefinitionCache(10, Duration.ofHours(1)), null, 1)
+      deserializer.deserialize(ByteBuffer.wrap(first))
+      deserializer.deserialize(ByteBuffer.wrap(second)) should be(new MetricData(definition, 2.5, 1533174784L))
+    }
+
+    it("should send every series in full after a reset") {
+      val serializer = new MDMSerializer()
+      serializer.serialize(metric)
+      serializer.reset()
+      serializer.isSent(definition) should be(false)
+    }
+  }
+}
@@ -15,9 +15,15 @@
  */
 package com.expedia.metrics.metrictank
 
+import java.io.{ByteArrayOutputStream, IOException, UncheckedIOException}
+import java.nio.{ByteBuffer, ByteOrder}
+import java.nio.channels.Channels
+import java.time.Duration
 import java.util.{Base64, Collections}
 
-import com.expedia.metrics.{MetricData, MetricDefinition, TagCollection}
+import com.expedia.metrics.{MetricData, MetricDataBuffer, MetricDefinition, TagCollection}
+import com.google.common.cache.CacheBuilder
+import org.msgpack.core.MessagePack
 import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
 
 import scala.collection.JavaConverters._
@@ -72,6 +78,171 @@ class MessagePackSerializerTest extends FunSpec with Matchers with GivenWhenThen
       l should be(metrics)
     }
 
+    it("should serialize different values for the same definition") {
+      Given("A definition that has already been serialized")
+      messagePackSerializer.serialize(metric)
+      val other = new MetricData(metric.getMetricDefinition, -1.25, 1546917437L)
+
+      When("serializing a MetricData with a different value and timestamp")
+      val b = messagePackSerializer.serialize(other)
+
+      Then("the value and timestamp should be written")
+      messagePackSerializer.deserialize(b) should be(other)
+    }
+
+    it("should serialize a List of MetricData that needs a 16 bit array header") {
+      Given("A list of 20 MetricData")
+      val many = (1 to 20).map(i => new MetricData(metric.getMetricDefinition, i, 1533174724L + i)).asJava
+
+      When("serializing and deserializing")
+      val l = messagePackSerializer.deserializeList(messagePackSerializer.serializeList(many))
+
+      Then("the list should be unchanged")
+      l should be(many)
+    }
+
+    it("should write a big-endian array header into a little-endian ByteBuffer") {
+      Given("A list of 20 MetricData and a little-endian buffer")
+      val many = (1 to 20).map(i => new MetricData(metric.getMetricDefinition, i, 1533174724L + i)).asJava
+      val buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN)
+
+      When("serializing into the buffer")
+      val length = messagePackSerializer.serializeList(many, buffer)
+
+      Then("the header should be big-endian, the buffer's order unchanged and the list readable")
+      buffer.array.take(3) should be(Array(0xdc, 0x00, 0x14).map(_.toByte))
+      buffer.order should be(ByteOrder.LITTLE_ENDIAN)
+      messagePackSerializer.deserializeList(buffer.array.take(length)) should be(many)
+    }
+
+    it("should serialize a MetricData into a ByteBuffer") {
+      Given("A buffer with space after its position")
+      val buffer = ByteBuffer.allocate(serializedMetric.length + 1)
+      buffer.put(0.toByte)
+
+      When("serializing")
+      val n = messagePackSerializer.serialize(metric, buffer)
+
+      Then("the MetricData should be written after the position")
+      n should be(serializedMetric.length)
+      buffer.array.drop(1) should be(serializedMetric)
+    }
+
+    it("should not write to a ByteBuffer that is too small") {
+      val buffer = ByteBuffer.allocate(serializedMetricList.length - 1)
+      intercept[IOException] {
+        messagePackSerializer.serializeList(metrics, buffer)
+      }
+      buffer.position should be(0)
+    }
+
+    it("should serialize a List of MetricData to an OutputStream") {
+      val out = new ByteArrayOutputStream()
+      messagePackSerializer.serializeList(metrics, out) should be(serializedMetricList.length)
+      out.toByteArray should be(serializedMetricList)
+    }
+
+    it("should serialize a MetricData to a WritableByteChannel") {
+      val out = new ByteArrayOutputStream()
+      messagePackSerializer.serialize(metric, Channels.newChannel(out)) should be(serializedMetric.length)
+      out.toByteArray should be(serializedMetric)
+    }
+
+    it("should deserialize fields in any order and skip unknown fields") {
+      Given("A MetricData with its fields reversed and unknown fields")
+      val packer = MessagePack.newDefaultBufferPacker()
+      packer.packMapHeader(11)
+      packer.packString("Tags").packArrayHeader(1).packString("tag=value")
+      packer.packString("UnknownFieldWithALongName").packArrayHeader(2).packInt(1).packString("x")
+      packer.packString("Mtype").packString("gauge")
+      packer.packString("Time").packLong(1533174724L)
+      packer.packString("Unit").packString("P")
+      packer.packString("Value").packDouble(0.5202212202357678)
+      packer.packString("Interval").packInt(60)
+      packer.packString("Name").packString("a")
+      packer.packString("OrgId").packInt(1)
+      packer.packString("Id").packString("ignored")
+      packer.packString("X").packNil()
+      packer.close()
+
+      When("deserializing")
+      val m = messagePackSerializer.deserialize(packer.toByteArray)
+
+      Then("the known fields should be read")
+      val tags = new TagCollection(Map("tag" -> "value").asJava)
+      m should be(new MetricData(new MetricTankMetricDefinition("a", tags, TagCollection.EMPTY, 1, 60, "P", "gauge"), 0.5202212202357678, 1533174724L))
+    }
+
+    it("should reuse cached definitions when deserializing") {
+      Given("A serializer with a definition cache")
+      val cache = CacheBuilder.newBuilder().maximumSize(10).build[MetricKey, MetricDefinition]()
+      val cachingSerializer = new MessagePackSerializer(cache)
+      val other = new MetricData(metric.getMetricDefinition, -1.25, 1546917437L)
+
+      When("deserializing two MetricData for the same series")
+      val first = cachingSerializer.deserialize(serializedMetric)
+      val second = cachingSerializer.deserialize(messagePackSerializer.serialize(other))
+
+      Then("the second should reuse the definition of the first")
+      first should be(metric)
+      second should be(other)
+      second.getMetricDefinition should be theSameInstanceAs first.getMetricDefinition
+      cache.getIfPresent(new MetricTankIdFactory().getKey(metric.getMetricDefinition)) should be theSameInstanceAs first.getMetricDefinition
+    }
+
+    it("should deserialize a MetricData without parsing its tags") {
+      Given("A serialized MetricData in the middle of a buffer")
+      val buffer = ByteBuffer.allocate(serializedMetric.length + 4)
+      buffer.put(Array[Byte](9, 9)).put(serializedMetric).put(Array[Byte](7, 7))
+      buffer.flip()
+      buffer.position(2)
+
+      When("deserializing lazily")
+      val m = messagePackSerializer.deserializeLazily(buffer)
+
+      Then("it should equal the eagerly deserialized MetricData")
+      m should be(metric)
+      m.hashCode should be(metric.hashCode)
+      m.getMetricDefinition.getTags should be(metric.getMetricDefinition.getTags)
+      messagePackSerializer.serialize(m) should be(serializedMetric)
+      buffer.position should be(2)
+    }
+
+    it("should not refer to the buffer from a lazily deserialized definition that is cached") {
+      Given("A serializer with a definition cache and a MetricData with tags")
+      val cachingSerializer = new MessagePackSerializer(new PrimitiveMetricDefinitionCache(10, Duration.ofMinutes(1)))
+      val tagged = new MetricData(new MetricTankMetricDefinition("a", new TagCollection(Map("k" -> "v").asJava), TagCollection.EMPTY, 1, 60, "P", "gauge"), 1.0, 1533174724L)
+      val bytes = messagePackSerializer.serialize(tagged)
+      val buffer = ByteBuffer.wrap(bytes.clone)
+
+      When("deserializing it lazily and then reusing the buffer")
+      cachingSerializer.deserializeLazily(buffer)
+      java.util.Arrays.fill(buffer.array, 0.toByte)
+
+      Then("the cached definition should still have its tags")
+      val m = cachingSerializer.deserialize(bytes)
+      m.getMetricDefinition.getTags should be(tagged.getMetricDefinition.getTags)
+    }
+
+    it("should report malformed tags when they are first read") {
+      Given("A MetricData with a tag that has no '='")
+      val packer = MessagePack.newDefaultBufferPacker()
+      packer.packMapHeader(5)
+      packer.packString("OrgId").packInt(1)
+      packer.packString("Name").packString("a")
+      packer.packString("Interval").packInt(60)
+      packer.packString("Mtype").packString("gauge")
+      packer.packString("Tags").packArrayHeader(1).packString("tag")
+      packer.close()
+
+      When("deserializing lazily")
+      val m = messagePackSerializer.deserializeLazily(ByteBuffer.wrap(packer.toByteArray))
+
+      Then("the scalar fields should be readable and the tags should throw")
+      m.getMetricDefinition.getKey should be("a")
+      an [UncheckedIOException] should be thrownBy m.getMetricDefinition.getTags
+    }
+
     it("should default to an empty unit when deserialising") {
       Given("A MetricData with no unit")
       val serializedMetricNoUnit = Base64.getDecoder.decode("iaJJZNkiMS5mNmJlZTcyZTU1OWI0ZDM4YmMwMWJhZmU5NWE3YjFlZaVPcmdJZAGkTmFtZaFhqEludGVydmFsPKVWYWx1ZctAyAAAAAAAAKRVbml0oKRUaW1l0wAAAABcNBY9pU10eXBlpWdhdWdlpFRhZ3OQ")
@@ -84,5 +255,83 @@ class MessagePackSerializerTest extends FunSpec with Matchers with GivenWhenThen
       m should be(metricNoUnit)
     }
 
+    it("should serialize a MetricDataBuffer as a MetricData array") {
+      Given("A MetricDataBuffer holding the MetricData")
+      val buffer = new MetricDataBuffer()
+      buffer.add(metric)
+
+      When("serializing it to an array, a buffer and a stream")
+      val bytes = messagePackSerializer.serialize(buffer)
+      val target = ByteBuffer.allocate(serializedMetricList.length)
+      val length = messagePackSerializer.serialize(buffer, target)
+      val out = new ByteArrayOutputStream()
+      messagePackSerializer.serialize(buffer, out)
+
+      Then("each should hold the serialized list")
+      bytes should be(serializedMetricList)
+      length should be(serializedMetricList.length)
+      target.array should be(serializedMetricList)
+      out.toByteArray should be(serializedMetricList)
+    }
+
+    it("should serialize a MetricDataBuffer into a little-endian ByteBuffer") {
+      Given("A MetricDataBuffer of 20 points and a little-endian buffer")
+      val buffer = new MetricDataBuffer()
+      (1 to 20).foreach(i => buffer.add(metric.getMetricDefinition, i, 1533174724L + i))
+      val target = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN)
+
+      When("serializing into the buffer")
+      val length = messagePackSerializer.serialize(buffer, target)
+
+      Then("it should match the serialized array and deserialize into an equal MetricDataBuffer")
+      target.array.take(length) should be(messagePackSerializer.serialize(buffer))
+      val result = new MetricDataBuffer()
+      messagePackSerializer.deserializeInto(ByteBuffer.wrap(target.array, 0, length), result) should be(20)
+      (0 until 20).foreach(i => result.getMetricData(i) should be(buffer.getMetricData(i)))
+    }
+
+    it("should deserialize a MetricData array into a MetricDataBuffer") {
+      Given("A MetricDataBuffer that already holds a point")
+      val buffer = new MetricDataBuffer()
+      buffer.add(metric)
+
+      When("deserializing the serialized list into it")
+      val count = messagePackSerializer.deserializeInto(serializedMetricList, buffer)
+
+      Then("the MetricData should be appended")
+      count should be(1)
+      buffer.size should be(2)
+      buffer.getMetricData(1) should be(metric)
+    }
+
+    it("should reuse cached definitions when deserializing into a MetricDataBuffer") {
+      Given("A serializer with a definition cache and a list with the same series twice")
+      val cachingSerializer = new MessagePackSerializer(new PrimitiveMetricDefinitionCache(10, Duration.ofMinutes(1)))
+      val bytes = messagePackSerializer.serializeList(List(metric, new MetricData(metric.getMetricDefinition, 2.0, 1533174784L)).asJava)
+      val buffer = new MetricDataBuffer()
+
+      When("deserializing into a MetricDataBuffer")
+      cachingSerializer.deserializeInto(bytes, buffer)
+
+      Then("both points should share one definition")
+      buffer.getMetricData(0) should be(metric)
+      buffer.getValue(1) should be(2.0)
+      buffer.getTimestamp(1) should be(1533174784L)
+      buffer.getMetricDefinition(1) should be theSameInstanceAs buffer.getMetricDefinition(0)
+    }
+
+    it("should fail to deserialize a truncated array into a MetricDataBuffer") {
+      an [IOException] should be thrownBy messagePackSerializer.deserializeInto(serializedMetricList.take(20), new MetricDataBuffer())
+    }
+
+    it("should not size a MetricDataBuffer from an array header that the message can't hold") {
+      Given("An array header claiming 2^31 - 1 elements and nothing else")
+      val bytes = Array(0xdd, 0x7f, 0xff, 0xff, 0xff).map(_.toByte)
+
+      When("deserializing it into a MetricDataBuffer")
+      Then("an IOException should be thrown instead of allocating for every claimed element")
+      an [IOException] should be thrownBy messagePackSerializer.deserializeInto(bytes, new MetricDataBuffer())
+    }
+
   }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.time.Duration
+import java.util.Arrays
+
+import com.expedia.metrics.{MetricData, TagCollection}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class MetricDefinitionSnapshotTest extends FunSpec with Matchers with GivenWhenThen {
+  private val idFactory = new MetricTankIdFactory()
+
+  private def definition(i: Int) = {
+    val tags = new TagCollection(Map("host" -> ("host" + i)).asJava)
+    new MetricTankMetricDefinition("metric" + (i % 10), tags, TagCollection.EMPTY, 1 + i % 3, 60, "ms", "gauge")
+  }
+
+  describe("MetricDefinitionSnapshot") {
+    it("should load the definitions that were written") {
+      Given("a cache of definitions")
+      val definitions = (0 until 1000).map(definition)
+      val cache = new PrimitiveMetricDefinitionCache(10000, Duration.ofHours(1))
+      definitions.foreach(d => cache.put(idFactory.getKey(d), d))
+      val dir = Files.createTempDirectory("snapshot")
+      val file = dir.resolve("definitions")
+
+      When("writing a snapshot and loading it into an empty cache")
+      val written = new MetricDefinitionSnapshot().write(cache, file)
+      val loaded = new PrimitiveMetricDefinitionCache(10000, Duration.ofHours(1))
+      val count = new MetricDefinitionSnapshot().load(file, loaded)
+
+      Then("the empty cache should hold every definition")
+      written should be(1000)
+      count should be(1000)
+      loaded.size should be(1000)
+      definitions.foreach(d => loaded.get(idFactory.getKey(d)) should be(d))
+      Files.list(dir).count should be(1)
+    }
+
+    it("should reject a truncated snapshot") {
+      Given("a snapshot with its last bytes missing")
+      val cache = new PrimitiveMetricDefinitionCache(10, Duration.ofHours(1))
+      cache.put(idFactory.getKey(definition(1)), definition(1))
+      val file = Files.createTempDirectory("snapshot").resolve("definitions")
+      new MetricDefinitionSnapshot().write(cache, file)
+      val bytes = Files.readAllBytes(file)
+      Files.write(file, Arrays.copyOf(bytes, bytes.length - 1))
+
+      Then("loading should fail without changing the cache")
+      val loaded = new PrimitiveMetricDefinitionCache(10, Duration.ofHours(1))
+      an [IOException] should be thrownBy new MetricDefinitionSnapshot().load(file, loaded)
+      loaded.size should be(0)
+    }
+
+    it("should reject a snapshot with an invalid definition") {
+      Given("a snapshot whose definition bytes are not msgpack")
+      val cache = new PrimitiveMetricDefinitionCache(10, Duration.ofHours(1))
+      cache.put(idFactory.getKey(definition(1)), definition(1))
+      val file = Files.createTempDirectory("snapshot").resolve("definitions")
+      new MetricDefinitionSnapshot().write(cache, file)
+      val bytes = Files.readAllBytes(file)
+      Arrays.fill(bytes, 4 + 24, bytes.length, 0xc1.toByte)
+      Files.write(file, bytes)
+
+      Then("loading should fail with an IOException without changing the cache")
+      val loaded = new PrimitiveMetricDefinitionCache(10, Duration.ofHours(1))
+      an [IOException] should be thrownBy new MetricDefinitionSnapshot().load(file, loaded)
+      loaded.size should be(0)
+    }
+
+    it("should warm start an MDMCachingDeserializer") {
+      Given("a snapshot written by a deserializer that has seen a MetricData")
+      val metricData = new MessagePackSerializer().serialize(new MetricData(definition(1), 1.0, 1L))
+      val key = idFactory.getKey(definition(1))
+      val file = Files.createTempDirectory("snapshot").resolve("definitions")
+      val deserializer = new MDMCachingDeserializer()
+      deserializer.deserialize(ByteBuffer.wrap(metricData))
+      deserializer.writeSnapshot(file) should be(1)
+
+      When("a new deserializer loads the snapshot")
+      val restarted = new MDMCachingDeserializer()
+      restarted.loadSnapshot(file) should be(1)
+
+      Then("it should resolve a MetricPoint of the series")
+      val point = new MetricPointSerializer().serialize(new MetricPoint(key, 2.0, 2L))
+      val buffer = ByteBuffer.allocate(point.length + 1).put(2.toByte).put(point)
+      buffer.flip()
+      restarted.deserialize(buffer).getMetricDefinition should be(definition(1))
+    }
+  }
+}
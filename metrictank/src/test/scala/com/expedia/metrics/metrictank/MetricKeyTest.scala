@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+class MetricKeyTest extends FunSpec with Matchers with GivenWhenThen {
+  describe("MetricKey") {
+    val id = Array(0xd9, 0xc9, 0x8f, 0x44, 0x57, 0xb6, 0xaa, 0x06, 0xa0, 0x8e, 0x40, 0x1b, 0x0f, 0xbc, 0x97, 0x7f).map(_.toByte)
+
+    it("should hold a byte array id as two longs") {
+      Given("a key created from a byte array")
+      val key = new MetricKey(1, id)
+
+      Then("the id should be split into big-endian longs")
+      key.getIdHigh should be(0xd9c98f4457b6aa06L)
+      key.getIdLow should be(0xa08e401b0fbc977fL)
+      key.getId should be(id)
+    }
+
+    it("should be equal to a key created from longs") {
+      val fromBytes = new MetricKey(1, id)
+      val fromLongs = new MetricKey(1, 0xd9c98f4457b6aa06L, 0xa08e401b0fbc977fL)
+
+      fromBytes should equal(fromLongs)
+      fromBytes.hashCode should equal(fromLongs.hashCode)
+      fromBytes should not equal new MetricKey(2, 0xd9c98f4457b6aa06L, 0xa08e401b0fbc977fL)
+    }
+
+    it("should format as the Metrictank id") {
+      new MetricKey(1, id).toString should be("1.d9c98f4457b6aa06a08e401b0fbc977f")
+      new MetricKey(12, 0L, 1L).toString should be("12.00000000000000000000000000000001")
+    }
+
+    it("should parse the Metrictank id") {
+      def parse(s: String) = MetricKey.parse(s.getBytes("US-ASCII"), s.length)
+
+      parse("1.d9c98f4457b6aa06a08e401b0fbc977f") should be(new MetricKey(1, id))
+      parse("-7.D9C98F4457B6AA06A08E401B0FBC977F") should be(new MetricKey(-7, id))
+      parse(".d9c98f4457b6aa06a08e401b0fbc977f") should be(null)
+      parse("1.d9c98f4457b6aa06a08e401b0fbc977") should be(null)
+      parse("1:d9c98f4457b6aa06a08e401b0fbc977f") should be(null)
+      parse("1.x9c98f4457b6aa06a08e401b0fbc977f") should be(null)
+      parse("99999999999.d9c98f4457b6aa06a08e401b0fbc977f") should be(null)
+    }
+
+    it("should reject an id that is not 16 bytes") {
+      intercept[IllegalArgumentException] {
+        new MetricKey(1, Array[Byte](1, 2, 3))
+      }
+    }
+  }
+}
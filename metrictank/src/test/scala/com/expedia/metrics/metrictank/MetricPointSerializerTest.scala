@@ -15,8 +15,12 @@
  */
 package com.expedia.metrics.metrictank
 
-import java.util.Base64
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.time.Duration
+import java.util.{Arrays, Base64}
 
+import com.expedia.metrics.{MetricDataBuffer, MetricDefinition, TagCollection}
 import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
 
 class MetricPointSerializerTest extends FunSpec with Matchers with GivenWhenThen {
@@ -46,5 +50,132 @@ class MetricPointSerializerTest extends FunSpec with Matchers with GivenWhenThen
       Then("the result should be predictable")
       m should be(metricPoint)
     }
+
+    it("should visit each MetricPoint in a buffer") {
+      Given("A buffer holding two MetricPoints")
+      val buffer = ByteBuffer.allocate(2 * MetricPointSerializer.METRIC_POINT_BYTES)
+      buffer.put(serializedMetricPoint).put(serializedMetricPoint).flip()
+
+      When("visiting the buffer")
+      var visited = List.empty[(Int, Long, Long, Double, Long)]
+      val count = metricPointSerializer.deserialize(buffer, new MetricPointVisitor {
+        override def visit(orgId: Int, idHigh: Long, idLow: Long, value: Double, time: Long): Unit =
+          visited = visited :+ ((orgId, idHigh, idLow, value, time))
+      })
+
+      Then("the fields of both points should be visited")
+      count should be(2)
+      val expected = (1, 0xd9c98f4457b6aa06L, 0xa08e401b0fbc977fL, 0.5202212202357678, 1533174724L)
+      visited should be(List(expected, expected))
+    }
+
+    it("should reject a buffer holding a partial MetricPoint") {
+      Given("A buffer holding a truncated MetricPoint")
+      val buffer = ByteBuffer.wrap(serializedMetricPoint, 0, MetricPointSerializer.METRIC_POINT_BYTES - 1)
+
+      When("visiting the buffer")
+      Then("an IOException is thrown")
+      intercept[IOException] {
+        metricPointSerializer.deserialize(buffer, new MetricPointVisitor {
+          override def visit(orgId: Int, idHigh: Long, idLow: Long, value: Double, time: Long): Unit = ()
+        })
+      }
+    }
+
+    it("should serialize a MetricPoint without its org id") {
+      Given("A MetricPoint")
+
+      When("serializing without the org id")
+      val b = metricPointSerializer.serializeWithoutOrg(metricPoint)
+
+      Then("the result should be the MetricPoint record without its last 4 bytes")
+      b should be(serializedMetricPoint.take(MetricPointSerializer.METRIC_POINT_WITHOUT_ORG_BYTES))
+      metricPointSerializer.deserializeWithoutOrg(ByteBuffer.wrap(b), 1) should be(metricPoint)
+    }
+
+    it("should serialize and visit a batch of MetricPoints") {
+      Given("Two MetricPoints")
+      val other = new MetricPoint(new MetricKey(2, 3L, 4L), -1.5, 4000000000L)
+      val buffer = ByteBuffer.allocate(2 * MetricPointSerializer.METRIC_POINT_WITHOUT_ORG_BYTES)
+
+      When("serializing them without the org id and visiting them with org id 5")
+      val length = metricPointSerializer.serializeListWithoutOrg(Arrays.asList(metricPoint, other), buffer)
+      buffer.flip()
+      var visited = List.empty[(Int, Long, Long, Double, Long)]
+      val count = metricPointSerializer.deserializeWithoutOrg(buffer, 5, new MetricPointVisitor {
+        override def visit(orgId: Int, idHigh: Long, idLow: Long, value: Double, time: Long): Unit =
+          visited = visited :+ ((orgId, idHigh, idLow, value, time))
+      })
+
+      Then("both points should be visited with org id 5")
+      length should be(56)
+      count should be(2)
+      visited should be(List(
+        (5, 0xd9c98f4457b6aa06L, 0xa08e401b0fbc977fL, 0.5202212202357678, 1533174724L),
+        (5, 3L, 4L, -1.5, 4000000000L)))
+    }
+
+    it("should not write a batch of MetricPoints to a buffer that is too small") {
+      val buffer = ByteBuffer.allocate(MetricPointSerializer.METRIC_POINT_BYTES)
+      intercept[IOException] {
+        metricPointSerializer.serializeList(Arrays.asList(metricPoint, metricPoint), buffer)
+      }
+      buffer.position should be(0)
+    }
+
+    it("should round trip a MetricDataBuffer through MetricPoint records") {
+      Given("A MetricDataBuffer with points of a known and an unknown series")
+      val known = new MetricTankMetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY, 1, 60, "P", "gauge")
+      val unknown = new MetricTankMetricDefinition("b", TagCollection.EMPTY, TagCollection.EMPTY, 1, 60, "P", "gauge")
+      val points = new MetricDataBuffer()
+      points.add(known, 0.5, 1533174724L)
+      points.add(unknown, 1.5, 1533174724L)
+      points.add(known, 2.5, 1533174784L)
+      val cache = new PrimitiveMetricDefinitionCache(10, Duration.ofMinutes(1))
+      cache.put(new MetricTankIdFactory().getKey(known), known)
+
+      When("serializing it and deserializing the records into another buffer")
+      val buffer = ByteBuffer.allocate(3 * MetricPointSerializer.METRIC_POINT_BYTES)
+      val length = metricPointSerializer.serialize(points, buffer)
+      buffer.flip()
+      val result = new MetricDataBuffer()
+      val count = metricPointSerializer.deserializeInto(buffer, cache, result)
+
+      Then("only the points of the cached series should be added")
+      length should be(96)
+      count should be(2)
+      result.getMetricDefinition(0) should be theSameInstanceAs known
+      result.getValue(0) should be(0.5)
+      result.getValue(1) should be(2.5)
+      result.getTimestamp(1) should be(1533174784L)
+    }
+
+    it("should read MetricPointWithoutOrg records into a MetricDataBuffer with the given org id") {
+      val definition = new MetricTankMetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY, 5, 60, "P", "gauge")
+      val points = new MetricDataBuffer()
+      points.add(definition, 0.5, 1533174724L)
+      val cache = new PrimitiveMetricDefinitionCache(10, Duration.ofMinutes(1))
+      cache.put(new MetricTankIdFactory().getKey(definition), definition)
+
+      val buffer = ByteBuffer.allocate(MetricPointSerializer.METRIC_POINT_WITHOUT_ORG_BYTES)
+      metricPointSerializer.serializeWithoutOrg(points, buffer)
+      buffer.flip()
+      val result = new MetricDataBuffer()
+
+      metricPointSerializer.deserializeWithoutOrgInto(buffer, 5, cache, result) should be(1)
+      result.getMetricDefinition(0) should be theSameInstanceAs definition
+    }
+
+    it("should not write a MetricDataBuffer with a definition that has no key") {
+      val points = new MetricDataBuffer()
+      points.add(new MetricTankMetricDefinition("a", 1, 60, "P", "gauge"), 0.5, 1533174724L)
+      points.add(new MetricDefinition(null, TagCollection.EMPTY, TagCollection.EMPTY), 0.5, 1533174724L)
+      val buffer = ByteBuffer.allocate(2 * MetricPointSerializer.METRIC_POINT_BYTES)
+      intercept[IOException] {
+        metricPointSerializer.serialize(points, buffer)
+      }
+      buffer.position should be(0)
+    }
+
   }
 }
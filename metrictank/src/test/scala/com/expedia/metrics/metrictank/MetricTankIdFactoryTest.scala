@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import com.expedia.metrics.{MetricDefinition, TagCollection}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class MetricTankIdFactoryTest extends FunSpec with Matchers with GivenWhenThen {
+  describe("MetricTankIdFactory") {
+    val idFactory = new MetricTankIdFactory()
+    val tags = new TagCollection(Map("tag" -> "value").asJava)
+
+    it("should compute the Metrictank id") {
+      val metric = new MetricTankMetricDefinition("a", TagCollection.EMPTY, TagCollection.EMPTY, 1, 60, "P", "gauge")
+      idFactory.getId(metric) should be("1.d9c98f4457b6aa06a08e401b0fbc977f")
+    }
+
+    it("should memoize the key of a MetricTankMetricDefinition") {
+      Given("a MetricTankMetricDefinition")
+      val metric = new MetricTankMetricDefinition("a", tags, TagCollection.EMPTY, 1, 60, "P", "gauge")
+
+      When("getting the key twice")
+      val first = idFactory.getKey(metric)
+      val second = new MetricTankIdFactory().getKey(metric)
+
+      Then("the same key instance should be returned")
+      second should be theSameInstanceAs first
+      idFactory.getId(metric) should be(first.toString)
+    }
+
+    it("should compute equal keys for equal definitions") {
+      val metric1 = new MetricTankMetricDefinition("a", tags, TagCollection.EMPTY, 1, 60, "P", "gauge")
+      val metric2 = new MetricTankMetricDefinition("a", tags, TagCollection.EMPTY, 1, 60, "P", "gauge")
+      idFactory.getKey(metric1) should equal(idFactory.getKey(metric2))
+    }
+
+    it("should compute the key of a plain MetricDefinition using defaults") {
+      val metric = new MetricDefinition("a", tags, TagCollection.EMPTY)
+      val expected = new MetricTankMetricDefinition("a", tags, TagCollection.EMPTY, 1, 15, "unknown", "gauge")
+      idFactory.getKey(metric) should equal(idFactory.getKey(expected))
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+import com.expedia.metrics.{MetricData, MetricDefinition}
+import com.google.common.base.Ticker
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.mutable.ArrayBuffer
+
+class PendingMetricPointsTest extends FunSpec with Matchers with GivenWhenThen {
+  class FakeTicker extends Ticker {
+    var nanos = 0L
+
+    override def read(): Long = nanos
+
+    def advance(seconds: Long): Unit = nanos += TimeUnit.SECONDS.toNanos(seconds)
+  }
+
+  private val definition = new MetricDefinition("a")
+
+  private def release(pending: PendingMetricPoints, idHigh: Long): Seq[MetricData] = {
+    val released = ArrayBuffer[MetricData]()
+    pending.release(new MetricKey(1, idHigh, 0L), definition, new Consumer[MetricData] {
+      override def accept(m: MetricData): Unit = released += m
+    })
+    released
+  }
+
+  describe("PendingMetricPoints") {
+    it("should release the points of a series in the order they were parked") {
+      Given("points parked for two series")
+      val pending = new PendingMetricPoints(10, 1 << 20, Duration.ofMinutes(1))
+      (0 until 4).foreach(i => pending.park(1, i % 2, 0L, i, i))
+
+      When("releasing one series")
+      val released = release(pending, 0L)
+
+      Then("its points should be released in order and the other series should remain parked")
+      released should be(Seq(new MetricData(definition, 0, 0), new MetricData(definition, 2, 2)))
+      pending.size should be(2)
+      pending.getParkedCount should be(4)
+      pending.getReleasedCount should be(2)
+      release(pending, 0L) should be(empty)
+    }
+
+    it("should evict the oldest points when full") {
+      Given("a full holding area")
+      val pending = new PendingMetricPoints(3, 1 << 20, Duration.ofMinutes(1))
+      (0 until 3).foreach(i => pending.park(1, i, 0L, i, i))
+
+      When("parking another point")
+      pending.park(new MetricPoint(new MetricKey(1, 3L, 0L), 3, 3))
+
+      Then("the oldest point should be evicted")
+      pending.size should be(3)
+      pending.getEvictedCount should be(1)
+      release(pending, 0L) should be(empty)
+      release(pending, 3L) should be(Seq(new MetricData(definition, 3, 3)))
+    }
+
+    it("should limit the points held by bytes") {
+      val pending = new PendingMetricPoints(100, 2 * PendingMetricPoints.BYTES_PER_POINT, Duration.ofMinutes(1))
+      (0 until 3).foreach(i => pending.park(1, i, 0L, i, i))
+      pending.size should be(2)
+      pending.getEvictedCount should be(1)
+    }
+
+    it("should expire points that exceed the maximum age") {
+      Given("points parked at different times")
+      val ticker = new FakeTicker
+      val pending = new PendingMetricPoints(10, 1 << 20, Duration.ofSeconds(10), ticker)
+      pending.park(1, 0L, 0L, 0, 0)
+      ticker.advance(5)
+      pending.park(1, 1L, 0L, 1, 1)
+      ticker.advance(6)
+
+      When("releasing")
+      val expired = release(pending, 0L)
+      val kept = release(pending, 1L)
+
+      Then("only the point within the maximum age should be released")
+      expired should be(empty)
+      kept should be(Seq(new MetricData(definition, 1, 1)))
+      pending.getExpiredCount should be(1)
+    }
+  }
+}
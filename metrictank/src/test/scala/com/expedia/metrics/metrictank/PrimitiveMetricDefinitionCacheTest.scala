@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+import com.expedia.metrics.MetricDefinition
+import com.google.common.base.Ticker
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+class PrimitiveMetricDefinitionCacheTest extends FunSpec with Matchers with GivenWhenThen {
+  class FakeTicker extends Ticker {
+    var nanos = 0L
+
+    override def read(): Long = nanos
+
+    def advance(seconds: Long): Unit = nanos += TimeUnit.SECONDS.toNanos(seconds)
+  }
+
+  private def key(i: Int) = new MetricKey(1, i.toLong, -i.toLong)
+
+  private def definition(i: Int) = new MetricDefinition("metric" + i)
+
+  describe("PrimitiveMetricDefinitionCache") {
+    it("should return the definitions that were put") {
+      Given("a cache holding many definitions")
+      val cache = new PrimitiveMetricDefinitionCache(100000, Duration.ofHours(1))
+      val definitions = (0 until 10000).map(definition)
+      definitions.indices.foreach(i => cache.put(key(i), definitions(i)))
+
+      Then("each definition should be returned for its key")
+      cache.size should be(10000)
+      definitions.indices.foreach(i => cache.get(key(i)) should be theSameInstanceAs definitions(i))
+      cache.get(1, 5L, -5L) should be theSameInstanceAs definitions(5)
+      cache.get(key(10000)) should be(null)
+      cache.get(new MetricKey(2, 5L, -5L)) should be(null)
+    }
+
+    it("should replace the definition of a key") {
+      Given("a cache holding a definition")
+      val cache = new PrimitiveMetricDefinitionCache(10, Duration.ofHours(1))
+      cache.put(key(1), definition(1))
+
+      When("putting another definition for the same key")
+      cache.put(key(1), definition(2))
+
+      Then("the new definition should be returned")
+      cache.size should be(1)
+      cache.get(key(1)) should be(definition(2))
+    }
+
+    it("should expire definitions that have not been accessed") {
+      Given("a cache with definitions that are read at different times")
+      val ticker = new FakeTicker
+      val cache = new PrimitiveMetricDefinitionCache(1000, Duration.ofSeconds(10), ticker)
+      (0 until 100).foreach(i => cache.put(key(i), definition(i)))
+      ticker.advance(5)
+      (0 until 50).foreach(i => cache.get(key(i)))
+      ticker.advance(6)
+
+      When("cleaning up")
+      cache.cleanUp()
+
+      Then("only the definitions that were read recently should remain")
+      cache.size should be(50)
+      (0 until 50).foreach(i => cache.get(key(i)) should be(definition(i)))
+      (50 until 100).foreach(i => cache.get(key(i)) should be(null))
+    }
+
+    it("should evict unreferenced definitions when full") {
+      Given("a full cache where one definition has been read")
+      val cache = new PrimitiveMetricDefinitionCache(2, Duration.ofHours(1))
+      cache.put(key(1), definition(1))
+      cache.put(key(2), definition(2))
+      cache.get(key(1))
+
+      When("putting another definition")
+      cache.put(key(3), definition(3))
+
+      Then("the definition that was not read should be evicted")
+      cache.size should be(2)
+      cache.get(key(1)) should be(definition(1))
+      cache.get(key(2)) should be(null)
+      cache.get(key(3)) should be(definition(3))
+    }
+
+    it("should reject invalid arguments") {
+      an [IllegalArgumentException] should be thrownBy new PrimitiveMetricDefinitionCache(0, Duration.ofHours(1))
+      an [IllegalArgumentException] should be thrownBy new PrimitiveMetricDefinitionCache(1, Duration.ofHours(-1))
+      an [IllegalArgumentException] should be thrownBy new PrimitiveMetricDefinitionCache(1, Duration.ofHours(1)).put(key(1), null)
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Expedia Group, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.metrics.metrictank
+
+import java.nio.ByteBuffer
+import java.time.Duration
+import java.util.concurrent.{Callable, CountDownLatch, Executors, TimeUnit}
+import java.util.function.Consumer
+
+import com.expedia.metrics.{MetricData, MetricDefinition}
+import org.scalatest.{FunSpec, GivenWhenThen, Matchers}
+
+import scala.collection.JavaConverters._
+
+class StripedMetricDefinitionCacheTest extends FunSpec with Matchers with GivenWhenThen {
+  private val threads = 16
+
+  private def key(i: Int) = new MetricKey(1, i.toLong * 31, -i.toLong)
+
+  /**
+   * Runs the task on every thread at once and returns the results
+   */
+  private def runConcurrently[T](task: Int => T): Seq[T] = {
+    val executor = Executors.newFixedThreadPool(threads)
+    val start = new CountDownLatch(1)
+    try {
+      val futures = (0 until threads).map(t => executor.submit(new Callable[T] {
+        override def call(): T = {
+          start.await()
+          task(t)
+        }
+      }))
+      start.countDown()
+      futures.map(_.get(1, TimeUnit.MINUTES))
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  describe("StripedMetricDefinitionCache") {
+    it("should round the concurrency level up to a power of two segments") {
+      new StripedMetricDefinitionCache(100, Duration.ofHours(1), 1).getSegmentCount should be(1)
+      new StripedMetricDefinitionCache(100, Duration.ofHours(1), 12).getSegmentCount should be(16)
+      an[IllegalArgumentException] should be thrownBy new StripedMetricDefinitionCache(100, Duration.ofHours(1), 0)
+    }
+
+    it("should return the definitions that were put") {
+      Given("a cache holding many definitions")
+      val cache = new StripedMetricDefinitionCache(100000, Duration.ofHours(1))
+      val definitions = (0 until 10000).map(i => new MetricDefinition("metric" + i))
+      definitions.indices.foreach(i => cache.put(key(i), definitions(i)))
+
+      Then("each definition should be returned for its key")
+      cache.size should be(10000)
+      definitions.indices.foreach(i => cache.get(key(i)) should be theSameInstanceAs definitions(i))
+      cache.get(key(10000)) should be(null)
+
+      And("forEach should visit every entry")
+      var visited = 0
+      cache.forEach(new java.util.function.BiConsumer[MetricKey, MetricDefinition] {
+        override def accept(k: MetricKey, d: MetricDefinition): Unit = visited += 1
+      })
+      visited should be(10000)
+    }
+
+    it("should not lose or mix up definitions put and read by many threads") {
+      Given("a cache shared by 16 threads that put overlapping ranges of keys")
+      val cache = new StripedMetricDefinitionCache(1000000, Duration.ofHours(1), threads)
+      val keysPerThread = 20000
+
+      When("every thread puts its keys and reads back its own and its neighbour's keys")
+      val mismatches = runConcurrently { t =>
+        var mismatches = 0
+        for (i <- t * keysPerThread / 2 until t * keysPerThread / 2 + keysPerThread) {
+          cache.put(key(i), new MetricDefinition("metric" + i))
+          val definition = cache.get(key(i))
+          if (definition == null || definition.getKey != "metric" + i) mismatches += 1
+          val neighbour = cache.get(key(i + keysPerThread / 2))
+          if (neighbour != null && neighbour.getKey != "metric" + (i + keysPerThread / 2)) mismatches += 1
+        }
+        mismatches
+      }
+
+      Then("every read returns the definition of its own key and every key is cached once")
+      mismatches.sum should be(0)
+      cache.size should be((threads + 1) * keysPerThread / 2)
+    }
+
+    it("should let many threads share one MDMCachingDeserializer") {
+      Given("a deserializer shared by 16 threads, each consuming the MetricData and MetricPoints of its own series")
+      val deserializer = new MDMCachingDeserializer(new StripedMetricDefinitionCache(100000, Duration.ofHours(1)))
+      val seriesPerThread = 500
+      val idFactory = new MetricTankIdFactory()
+      val messagePackSerializer = new MessagePackSerializer()
+      val metricPointSerializer = new MetricPointSerializer()
+
+      def messages(t: Int): Seq[Array[Byte]] = (0 until seriesPerThread).flatMap { s =>
+        val metricData = new MetricData(new MetricTankMetricDefinition("thread" + t + ".series" + s, 1, 10, "P", "gauge"), s, 100)
+        val point = ByteBuffer.allocate(MetricPointSerializer.METRIC_POINT_BYTES + 1)
+        point.put(2.toByte)
+        metricPointSerializer.serialize(new MetricPoint(idFactory.getKey(metricData.getMetricDefinition), s, 110), point)
+        Seq(messagePackSerializer.serialize(metricData), point.array)
+      }
+
+      When("every thread deserializes its messages one at a time and as a batch")
+      val results = runConcurrently { t =>
+        val received = new java.util.ArrayList[MetricData]()
+        val consumer = new Consumer[MetricData] {
+          override def accept(m: MetricData): Unit = received.add(m)
+        }
+        val threadMessages = messages(t)
+        threadMessages.foreach(m => deserializer.deserialize(ByteBuffer.wrap(m), consumer))
+        val batch = new com.expedia.metrics.MetricDataBuffer()
+        deserializer.deserialize(threadMessages.map(ByteBuffer.wrap).asJava, batch, new java.util.concurrent.Executor {
+          override def execute(command: Runnable): Unit = command.run()
+        })
+        (t, received.asScala, batch)
+      }
+
+      Then("every MetricPoint is resolved to the definition of its own series")
+      results.foreach { case (t, received, batch) =>
+        received should have size seriesPerThread * 2
+        batch.size should be(seriesPerThread * 2)
+        received.grouped(2).zipWithIndex.foreach { case (Seq(metricData, point), s) =>
+          metricData.getMetricDefinition.getKey should be("thread" + t + ".series" + s)
+          point.getMetricDefinition should be theSameInstanceAs metricData.getMetricDefinition
+          point.getTimestamp should be(110)
+        }
+        (0 until seriesPerThread).foreach { s =>
+          batch.getMetricDefinition(2 * s + 1).getKey should be("thread" + t + ".series" + s)
+        }
+      }
+    }
+  }
+}